@@ -0,0 +1,96 @@
+package org.cpsolver.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.cpsolver.ifs.assignment.Assignment;
+import org.cpsolver.ifs.model.ConflictSet;
+import org.cpsolver.ifs.model.Value;
+import org.cpsolver.ifs.model.Variable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * SNAPSHOT ONLY: benchmarks of the API that is only available in the current
+ * solver snapshot (not in the released 1.3 jar), namely conflict computations
+ * into a reused {@link ConflictSet}, {@link Assignment#savepoint()} and
+ * {@link Assignment#rollback(int)}, and the assignment context lookup of the
+ * model's total value. <br>
+ * <br>
+ * This class lives in a separate source directory (src-snapshot) that is only
+ * compiled with the snapshot-api profile (active by default). To benchmark an
+ * older solver jar, build the module with
+ * <code>mvn package -P!snapshot-api -Dcpsolver.version=...</code>, the other
+ * benchmarks only use the released API (see {@link Problem}).
+ *
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotApiBenchmark {
+    private ConflictSet<Object> iConflicts = new ConflictSet<Object>();
+
+    /** Conflicting values of a random value, computed into a reused set */
+    @Benchmark
+    public int computeConflicts(ProblemState state) {
+        return computeConflicts(state.getProblem());
+    }
+
+    /** Assign a random value (unassigning its conflicts) and roll the change back */
+    @Benchmark
+    public int assignRollback(ProblemState state) {
+        return assignRollback(state.getProblem());
+    }
+
+    /** Assignment context lookup of the model's total value */
+    @Benchmark
+    public Object getContext(ProblemState state) {
+        return getContext(state.getProblem());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V extends Variable<V, T>, T extends Value<V, T>> int computeConflicts(Problem<V, T> problem) {
+        ConflictSet<T> conflicts = (ConflictSet<T>) (ConflictSet<?>) iConflicts;
+        conflicts.clear();
+        problem.getModel().computeConflicts(problem.getAssignment(), problem.nextProbe(), conflicts);
+        return conflicts.size();
+    }
+
+    private <V extends Variable<V, T>, T extends Value<V, T>> int assignRollback(Problem<V, T> problem) {
+        Assignment<V, T> assignment = problem.getAssignment();
+        T value = problem.nextProbe();
+        int savepoint = assignment.savepoint();
+        try {
+            assignment.assign(0, value);
+            return assignment.nrAssignedVariables();
+        } finally {
+            assignment.rollback(savepoint);
+            assignment.release(savepoint);
+        }
+    }
+
+    private <V extends Variable<V, T>, T extends Value<V, T>> Object getContext(Problem<V, T> problem) {
+        return problem.getModel().getTotalValueContext(problem.getAssignment());
+    }
+}
@@ -0,0 +1,55 @@
+package org.cpsolver.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks of this module and writes the results into a JSON
+ * report. <br>
+ * <br>
+ * Usage:
+ * <pre>
+ * <code>
+ * java -jar benchmarks.jar [report.json [regexp]]
+ * </code>
+ * </pre>
+ * The report defaults to benchmark.json, the optional regular expression
+ * limits the benchmarks that are executed (e.g., ConflictBenchmark). The
+ * problems are generated with fixed seeds (see {@link ProblemState#seed}),
+ * so that the reports of two solver versions can be compared.
+ *
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(args.length > 1 ? args[1] : Benchmarks.class.getPackage().getName() + ".*Benchmark")
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 0 ? args[0] : "benchmark.json");
+        new Runner(options.build()).run();
+    }
+}
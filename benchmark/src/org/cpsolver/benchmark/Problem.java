@@ -0,0 +1,205 @@
+package org.cpsolver.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.cpsolver.ifs.assignment.Assignment;
+import org.cpsolver.ifs.assignment.DefaultInheritedAssignment;
+import org.cpsolver.ifs.assignment.DefaultParallelAssignment;
+import org.cpsolver.ifs.assignment.DefaultSingleAssignment;
+import org.cpsolver.ifs.example.csp.CSPModel;
+import org.cpsolver.ifs.example.tt.TimetableModel;
+import org.cpsolver.ifs.model.Model;
+import org.cpsolver.ifs.model.Value;
+import org.cpsolver.ifs.model.Variable;
+import org.cpsolver.ifs.solution.Solution;
+import org.cpsolver.ifs.util.DataProperties;
+import org.cpsolver.ifs.util.ToolBox;
+
+/**
+ * A synthetic problem for the benchmarks. The problem is generated by one of the
+ * example generators ({@link CSPModel} for a random binary CSP, or
+ * {@link TimetableModel#generate(DataProperties, Assignment)} for a random
+ * timetabling problem) with the given random seed, so that the same problem is
+ * benchmarked in every run. An initial (consistent, but not necessarily
+ * complete) solution is created by assigning a random non-conflicting value to
+ * each variable, and it is then copied into a single, parallel, or inherited
+ * assignment. <br>
+ * <br>
+ * To avoid measuring the random number generator, the values used by the
+ * benchmarks (probes) are drawn in advance and cycled through. <br>
+ * <br>
+ * Only the API of the released solver is used here, so that the module can
+ * also be built against an older solver jar; benchmarks of the API that is only
+ * available in the current snapshot are in {@code SnapshotApiBenchmark}.
+ *
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ * @param <V> Variable
+ * @param <T> Value
+ */
+public class Problem<V extends Variable<V, T>, T extends Value<V, T>> {
+    private static final int sNrProbes = 1024;
+
+    private Model<V, T> iModel;
+    private Assignment<V, T> iAssignment;
+    private List<T> iProbes = new ArrayList<T>(sNrProbes);
+    private List<V> iAssigned = new ArrayList<V>(sNrProbes);
+    private int iNextProbe = 0, iNextAssigned = 0;
+
+    private Problem(Model<V, T> model, Assignment<V, T> initial, String assignment, long seed) {
+        iModel = model;
+        Random rnd = new Random(seed);
+        List<V> variables = new ArrayList<V>(model.variables());
+        for (V variable : variables) {
+            if (initial.getValue(variable) != null || variable.values(initial).isEmpty()) continue;
+            List<T> values = new ArrayList<T>(variable.values(initial));
+            for (int attempt = 0; attempt < 10; attempt++) {
+                T value = values.get(rnd.nextInt(values.size()));
+                if (!model.inConflict(initial, value)) {
+                    initial.assign(0, value);
+                    break;
+                }
+            }
+        }
+        if ("parallel".equals(assignment)) {
+            iAssignment = new DefaultParallelAssignment<V, T>(1, model, initial);
+        } else if ("inherited".equals(assignment)) {
+            iAssignment = new DefaultInheritedAssignment<V, T>(new Solution<V, T>(model, initial), 1);
+        } else {
+            iAssignment = initial;
+        }
+        for (int i = 0; i < sNrProbes; i++) {
+            V variable = variables.get(rnd.nextInt(variables.size()));
+            List<T> values = variable.values(iAssignment);
+            if (!values.isEmpty())
+                iProbes.add(values.get(rnd.nextInt(values.size())));
+        }
+        List<V> assigned = new ArrayList<V>(iAssignment.assignedVariables());
+        for (int i = 0; i < sNrProbes && !assigned.isEmpty(); i++)
+            iAssigned.add(assigned.get(rnd.nextInt(assigned.size())));
+    }
+
+    /**
+     * Create a problem
+     * @param problem problem type (csp or tt)
+     * @param size problem size (small, medium, or large)
+     * @param seed random seed
+     * @param assignment assignment type (single, parallel, or inherited)
+     * @return generated problem with an initial solution
+     */
+    public static Problem<?, ?> create(String problem, String size, long seed, String assignment) {
+        ToolBox.setSeed(seed);
+        if ("tt".equals(problem)) {
+            DataProperties cfg = new DataProperties();
+            int scale = ("small".equals(size) ? 1 : "large".equals(size) ? 8 : 3);
+            cfg.setProperty("Generator.NrRooms", String.valueOf(10 * scale));
+            cfg.setProperty("Generator.NrInstructors", String.valueOf(10 * scale));
+            cfg.setProperty("Generator.NrClasses", String.valueOf(10 * scale));
+            cfg.setProperty("Generator.NrGroupsOfRooms", String.valueOf(10 * scale));
+            cfg.setProperty("Generator.NrDependencies", String.valueOf(25 * scale));
+            cfg.setProperty("General.InitialAssignment", "false");
+            DefaultSingleAssignment<org.cpsolver.ifs.example.tt.Activity, org.cpsolver.ifs.example.tt.Location> initial = new DefaultSingleAssignment<org.cpsolver.ifs.example.tt.Activity, org.cpsolver.ifs.example.tt.Location>();
+            return new Problem<org.cpsolver.ifs.example.tt.Activity, org.cpsolver.ifs.example.tt.Location>(TimetableModel.generate(cfg, initial), initial, assignment, seed);
+        } else {
+            CSPModel model = null;
+            if ("small".equals(size))
+                model = new CSPModel(50, 15, 250, 170, seed);
+            else if ("large".equals(size))
+                model = new CSPModel(1000, 30, 10000, 765, seed);
+            else
+                model = new CSPModel(200, 20, 1500, 340, seed);
+            return new Problem<org.cpsolver.ifs.example.csp.CSPVariable, org.cpsolver.ifs.example.csp.CSPValue>(model, new DefaultSingleAssignment<org.cpsolver.ifs.example.csp.CSPVariable, org.cpsolver.ifs.example.csp.CSPValue>(), assignment, seed);
+        }
+    }
+
+    /** Problem model
+     * @return model
+     **/
+    public Model<V, T> getModel() { return iModel; }
+
+    /** Benchmarked assignment
+     * @return assignment
+     **/
+    public Assignment<V, T> getAssignment() { return iAssignment; }
+
+    /** Next probe: a random value of a random variable
+     * @return a value
+     **/
+    public T nextProbe() {
+        T value = iProbes.get(iNextProbe);
+        iNextProbe = (iNextProbe + 1) % iProbes.size();
+        return value;
+    }
+
+    /** Next random assigned variable
+     * @return a variable that is assigned in the initial solution
+     **/
+    public V nextAssigned() {
+        V variable = iAssigned.get(iNextAssigned);
+        iNextAssigned = (iNextAssigned + 1) % iAssigned.size();
+        return variable;
+    }
+
+    /**
+     * Unassign an assigned variable and assign it back its value (no conflicts are
+     * involved, the assignment is the same afterwards)
+     * @return the re-assigned value
+     */
+    public T unassignAssign() {
+        V variable = nextAssigned();
+        T value = iAssignment.getValue(variable);
+        iAssignment.unassign(0, variable);
+        iAssignment.assign(0, value);
+        return value;
+    }
+
+    /** Conflicting values of a probe using {@link Model#conflictValues(Assignment, Value)}
+     * @return conflicting values
+     **/
+    public Set<T> conflictValues() {
+        return iModel.conflictValues(iAssignment, nextProbe());
+    }
+
+    /** Check a probe using {@link Model#inConflict(Assignment, Value)}
+     * @return true if the probe is in a conflict
+     **/
+    public boolean inConflict() {
+        return iModel.inConflict(iAssignment, nextProbe());
+    }
+
+    /** Overall solution value
+     * @return {@link Model#getTotalValue(Assignment)}
+     **/
+    public double getTotalValue() {
+        return iModel.getTotalValue(iAssignment);
+    }
+
+    /** Save the current assignment as the best solution */
+    public void saveBest() {
+        iModel.saveBest(iAssignment);
+    }
+
+    /** Restore the best solution (which is the same as the current assignment) */
+    public void restoreBest() {
+        iModel.restoreBest(iAssignment);
+    }
+}
@@ -0,0 +1,65 @@
+package org.cpsolver.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark state: a generated {@link Problem} of the given type and size with
+ * an initial solution held in an assignment of the given type. The problem is
+ * created once per trial, every benchmark leaves the assignment as it was.
+ *
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ */
+@State(Scope.Thread)
+public class ProblemState {
+    /** Problem type: csp (random binary CSP) or tt (random timetabling problem) */
+    @Param({ "csp", "tt" })
+    public String problem;
+
+    /** Problem size */
+    @Param({ "small", "medium", "large" })
+    public String size;
+
+    /** Assignment type */
+    @Param({ "single", "parallel", "inherited" })
+    public String assignment;
+
+    /** Random seed, the same seed always gives the same problem */
+    @Param({ "1234" })
+    public long seed;
+
+    private Problem<?, ?> iProblem;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        org.apache.log4j.Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+        iProblem = Problem.create(problem, size, seed, assignment);
+    }
+
+    /** Benchmarked problem
+     * @return generated problem
+     **/
+    public Problem<?, ?> getProblem() {
+        return iProblem;
+    }
+}
@@ -19,6 +19,8 @@ import org.cpsolver.coursett.model.TimetableModel;
 import org.cpsolver.ifs.assignment.Assignment;
 import org.cpsolver.ifs.assignment.context.AssignmentConstraintContext;
 import org.cpsolver.ifs.assignment.context.ConstraintWithContext;
+import org.cpsolver.ifs.criteria.AbstractCriterion;
+import org.cpsolver.ifs.criteria.Criterion;
 import org.cpsolver.ifs.model.Constraint;
 import org.cpsolver.ifs.model.GlobalConstraint;
 import org.cpsolver.ifs.model.Model;
@@ -112,6 +114,7 @@ import org.cpsolver.ifs.util.ToolBox;
  *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
  */
 public class GroupConstraint extends ConstraintWithContext<Lecture, Placement, GroupConstraint.GroupConstraintContext> {
+    private static org.apache.log4j.Logger sLogger = org.apache.log4j.Logger.getLogger(GroupConstraint.class);
     private Long iConstraintId;
     private int iPreference;
     private ConstraintTypeInterface iType;
@@ -1546,6 +1549,16 @@ public class GroupConstraint extends ConstraintWithContext<Lecture, Placement, G
                 if (!isSatisfiedPair(assignment, p1, p2)) nrViolatedPairs++;
             }
         }
+        return computePreference(assignment, nrViolatedPairs);
+    }
+    
+    /**
+     * Current constraint preference, given the number of violated pairs (back-to-back sequence check is added, if needed)
+     * @param assignment current assignment
+     * @param nrViolatedPairs number of pairs of assigned classes that do not satisfy the constraint
+     * @return current preference
+     */
+    protected int computePreference(Assignment<Lecture, Placement> assignment, int nrViolatedPairs) {
         if (getType().is(Flag.BACK_TO_BACK)) {
             Set<Placement> conflicts = new HashSet<Placement>();
             if (isSatisfiedSeq(assignment, new HashMap<Lecture, Placement>(), conflicts))
@@ -1555,6 +1568,35 @@ public class GroupConstraint extends ConstraintWithContext<Lecture, Placement, G
         }
         return (nrViolatedPairs > 0 ? Math.abs(iPreference) * nrViolatedPairs : - Math.abs(iPreference));
     }
+    
+    /**
+     * True if the pair check of this constraint only depends on the two placements (and not on the rest of the assignment).
+     * The number of violated pairs is then maintained incrementally by the {@link GroupConstraintContext}.
+     * @return false for {@link ConstraintType#CH_NOTOVERLAP} (or any other constraint with an {@link AssignmentPairCheck})
+     */
+    protected boolean isPairCheckIncremental() {
+        return getType().type().iAssignmentCheck == null;
+    }
+    
+    /**
+     * Number of pairs between the given placement and the other assigned classes of the constraint that are not satisfied
+     * (pairs are checked in the same order as in {@link GroupConstraint#getCurrentPreference(Assignment)})
+     * @param assignment current assignment
+     * @param placement placement of one of the constraint's classes (the current assignment of this class is ignored)
+     * @return number of violated pairs involving the given placement
+     */
+    protected int nrViolatedPairs(Assignment<Lecture, Placement> assignment, Placement placement) {
+        Lecture lecture = placement.variable();
+        int nrViolatedPairs = 0;
+        for (Lecture other : variables()) {
+            if (other.getId() == lecture.getId()) continue;
+            Placement p = assignment.getValue(other);
+            if (p == null) continue;
+            if (other.getId() < lecture.getId() ? !isSatisfiedPair(assignment, p, placement) : !isSatisfiedPair(assignment, placement, p))
+                nrViolatedPairs++;
+        }
+        return nrViolatedPairs;
+    }
 
     /** Current constraint preference change (if given placement is assigned) 
      * @param assignment current assignment
@@ -1587,17 +1629,23 @@ public class GroupConstraint extends ConstraintWithContext<Lecture, Placement, G
         
         int nrViolatedPairsAfter = 0;
         int nrViolatedPairsBefore = 0;
-        for (Lecture v1 : variables()) {
-            for (Lecture v2 : variables()) {
-                if (v1.getId() >= v2.getId()) continue;
-                Placement p1 = (v1.equals(placement.variable()) ? null : assignment.getValue(v1));
-                Placement p2 = (v2.equals(placement.variable()) ? null : assignment.getValue(v2));
-                if (p1 != null && p2 != null && !isSatisfiedPair(assignment, p1, p2))
-                    nrViolatedPairsBefore ++;
-                if (v1.equals(placement.variable())) p1 = placement;
-                if (v2.equals(placement.variable())) p2 = placement;
-                if (p1 != null && p2 != null && !isSatisfiedPair(assignment, p1, p2))
-                    nrViolatedPairsAfter ++;
+        if (isPairCheckIncremental()) {
+            Placement current = assignment.getValue(placement.variable());
+            nrViolatedPairsBefore = getContext(assignment).getNrViolatedPairs() - (current == null ? 0 : nrViolatedPairs(assignment, current));
+            nrViolatedPairsAfter = nrViolatedPairsBefore + nrViolatedPairs(assignment, placement);
+        } else {
+            for (Lecture v1 : variables()) {
+                for (Lecture v2 : variables()) {
+                    if (v1.getId() >= v2.getId()) continue;
+                    Placement p1 = (v1.equals(placement.variable()) ? null : assignment.getValue(v1));
+                    Placement p2 = (v2.equals(placement.variable()) ? null : assignment.getValue(v2));
+                    if (p1 != null && p2 != null && !isSatisfiedPair(assignment, p1, p2))
+                        nrViolatedPairsBefore ++;
+                    if (v1.equals(placement.variable())) p1 = placement;
+                    if (v2.equals(placement.variable())) p2 = placement;
+                    if (p1 != null && p2 != null && !isSatisfiedPair(assignment, p1, p2))
+                        nrViolatedPairsAfter ++;
+                }
             }
         }
         
@@ -1686,7 +1734,7 @@ public class GroupConstraint extends ConstraintWithContext<Lecture, Placement, G
                 if (a && b) return t1.getStartSlot() + t1.getLength() <= t2.getStartSlot(); // same day: check times
             }
         }
-        return t1.getStartSlots().nextElement() + t1.getLength() <= t2.getStartSlots().nextElement();
+        return t1.getStartSlotsArray()[0] + t1.getLength() <= t2.getStartSlotsArray()[0];
     }
 
     private boolean isBackToBackDays(TimeLocation t1, TimeLocation t2) {
@@ -2084,31 +2132,146 @@ public class GroupConstraint extends ConstraintWithContext<Lecture, Placement, G
         return new GroupConstraintContext(assignment);
     }
 
+    /**
+     * Group constraint context. For soft constraints, the current preference is maintained incrementally: the number of
+     * violated pairs is updated only with the pairs involving the changed class (see {@link GroupConstraint#isPairCheckIncremental()})
+     * and, for the {@link Flag#MAX_HRS_DAY} constraints, the number of used slots is kept for each day (and week).
+     */
     public class GroupConstraintContext implements AssignmentConstraintContext<Lecture, Placement> {
         protected int iLastPreference = 0;
+        private int iNrAssigned = 0;
+        private int iNrViolatedPairs = 0;
+        private List<BitSet> iWeeks = null;
+        private int iNrWeeks = 1;
+        private int[][] iSlots = null;
+        private int[] iNrSlots = null;
+        private int iOver = 0;
         
         public GroupConstraintContext(Assignment<Lecture, Placement> assignment) {
+            if (!isHard()) {
+                if (getType().is(Flag.MAX_HRS_DAY)) {
+                    if (iMaxNHoursADayConsiderDatePatterns) {
+                        iWeeks = ((TimetableModel)getModel()).getWeeks();
+                        iNrWeeks = iWeeks.size();
+                    }
+                    iSlots = new int[Constants.DAY_CODES.length * iNrWeeks][];
+                    iNrSlots = new int[Constants.DAY_CODES.length * iNrWeeks];
+                }
+                for (Lecture lecture: variables()) {
+                    Placement placement = assignment.getValue(lecture);
+                    if (placement == null) continue;
+                    iNrAssigned ++;
+                    if (iSlots != null) updateSlots(placement, true);
+                }
+                if (isPairCheckIncremental() && iSlots == null) {
+                    for (Lecture v1 : variables()) {
+                        Placement p1 = assignment.getValue(v1);
+                        if (p1 == null) continue;
+                        for (Lecture v2 : variables()) {
+                            Placement p2 = assignment.getValue(v2);
+                            if (p2 == null || v1.getId() >= v2.getId()) continue;
+                            if (!isSatisfiedPair(assignment, p1, p2)) iNrViolatedPairs++;
+                        }
+                    }
+                }
+            }
             updateCriterion(assignment);
         }
 
         @Override
         public void assigned(Assignment<Lecture, Placement> assignment, Placement value) {
+            if (!isHard()) {
+                iNrAssigned ++;
+                if (iSlots != null)
+                    updateSlots(value, true);
+                else if (isPairCheckIncremental())
+                    iNrViolatedPairs += nrViolatedPairs(assignment, value);
+            }
             updateCriterion(assignment);
         }
 
         @Override
         public void unassigned(Assignment<Lecture, Placement> assignment, Placement value) {
+            if (!isHard()) {
+                iNrAssigned --;
+                if (iSlots != null)
+                    updateSlots(value, false);
+                else if (isPairCheckIncremental())
+                    iNrViolatedPairs -= nrViolatedPairs(assignment, value);
+            }
             updateCriterion(assignment);
         }
         
+        /**
+         * Update the number of used slots of the days (and weeks) of the given placement
+         * @param placement placement that is being assigned or unassigned
+         * @param assigned true if assigned, false if unassigned
+         */
+        private void updateSlots(Placement placement, boolean assigned) {
+            TimeLocation t = placement.getTimeLocation();
+            if (t == null) return;
+            int max = getType().getMax();
+            for (int d = 0; d < Constants.DAY_CODES.length; d++) {
+                if ((t.getDayCode() & Constants.DAY_CODES[d]) == 0) continue;
+                for (int w = 0; w < iNrWeeks; w++) {
+                    if (iWeeks != null && !t.shareWeeks(iWeeks.get(w))) continue;
+                    int idx = d * iNrWeeks + w;
+                    int[] slots = iSlots[idx];
+                    if (slots == null) {
+                        slots = new int[Constants.SLOTS_PER_DAY];
+                        iSlots[idx] = slots;
+                    }
+                    int before = iNrSlots[idx];
+                    for (int s = t.getStartSlot(); s < t.getStartSlot() + t.getLength(); s++) {
+                        if (assigned) {
+                            if (slots[s]++ == 0) iNrSlots[idx]++;
+                        } else {
+                            if (--slots[s] == 0) iNrSlots[idx]--;
+                        }
+                    }
+                    iOver += Math.max(0, iNrSlots[idx] - max) - Math.max(0, before - max);
+                }
+            }
+        }
+        
+        /**
+         * Current constraint preference, computed from the incrementally maintained counters
+         * @param assignment current assignment
+         * @return current preference, the same as {@link GroupConstraint#getCurrentPreference(Assignment)}
+         */
+        protected int getCurrentPreference(Assignment<Lecture, Placement> assignment) {
+            if (isHard()) return 0; // no preference
+            if (iNrAssigned < 2) return - Math.abs(iPreference); // not enough variable
+            if (iSlots != null) // max hours a day
+                return (iOver > 0 ? Math.abs(iPreference) * iOver / 12 : - Math.abs(iPreference));
+            if (!isPairCheckIncremental())
+                return GroupConstraint.this.getCurrentPreference(assignment);
+            return computePreference(assignment, iNrViolatedPairs);
+        }
+        
         protected void updateCriterion(Assignment<Lecture, Placement> assignment) {
             if (!isHard()) {
-                getModel().getCriterion(DistributionPreferences.class).inc(assignment, -iLastPreference);
-                iLastPreference = getCurrentPreference(assignment) + Math.abs(iPreference);
-                getModel().getCriterion(DistributionPreferences.class).inc(assignment, iLastPreference);
+                Criterion<Lecture, Placement> criterion = getModel().getCriterion(DistributionPreferences.class);
+                criterion.inc(assignment, -iLastPreference);
+                int preference = getCurrentPreference(assignment);
+                if (criterion instanceof AbstractCriterion && ((AbstractCriterion<Lecture, Placement>)criterion).isDebug()) {
+                    int check = GroupConstraint.this.getCurrentPreference(assignment);
+                    if (check != preference) {
+                        sLogger.error("Incremental preference of " + getName() + " does not match (" + preference + " != " + check + ").");
+                        preference = check;
+                    }
+                }
+                iLastPreference = preference + Math.abs(iPreference);
+                criterion.inc(assignment, iLastPreference);
             }
         }
         
         public int getPreference() { return iLastPreference; }
+        
+        /**
+         * Number of violated pairs (only maintained when {@link GroupConstraint#isPairCheckIncremental()} is true and the constraint is soft)
+         * @return number of pairs of assigned classes that do not satisfy the constraint
+         */
+        public int getNrViolatedPairs() { return iNrViolatedPairs; }
     }    
 }
@@ -2,9 +2,10 @@ package org.cpsolver.coursett.constraint;
 
 import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.cpsolver.coursett.Constants;
@@ -145,8 +146,7 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
         for (int i = 0; i < available.length; i++)
             available[i] = null;
         for (Placement p: iUnavailabilities) {
-            for (Enumeration<Integer> e = p.getTimeLocation().getSlots(); e.hasMoreElements();) {
-                int slot = e.nextElement();
+            for (int slot: p.getTimeLocation().getSlotsArray()) {
                 if (available[slot] == null)
                     available[slot] = new ArrayList<Placement>(1);
                 available[slot].add(p);
@@ -216,10 +216,10 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
         BitSet weekCode = placement.getTimeLocation().getWeekCode();
         InstructorConstraintContext context = getContext(assignment);
 
-        for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-            int slot = e.nextElement();
+        for (int slot: placement.getTimeLocation().getSlotsArray()) {
+            if (context.isFree(slot, weekCode)) continue;
             for (Placement p : context.getPlacements(slot)) {
-                if (!p.equals(current) && p.getTimeLocation().shareWeeks(weekCode)) {
+                if (!p.equals(current) && p.getTimeLocation().shareWeeks(placement.getTimeLocation())) {
                     if (p.canShareRooms(placement) && p.sameRooms(placement))
                         continue;
                     conflicts.add(p);
@@ -227,8 +227,7 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
             }
         }
         if (!iIgnoreDistances) {
-            for (Enumeration<Integer> e = placement.getTimeLocation().getStartSlots(); e.hasMoreElements();) {
-                int startSlot = e.nextElement();
+            for (int startSlot: placement.getTimeLocation().getStartSlotsArray()) {
 
                 int prevSlot = startSlot - 1;
                 if (prevSlot >= 0 && (prevSlot / Constants.SLOTS_PER_DAY) == (startSlot / Constants.SLOTS_PER_DAY)) {
@@ -276,10 +275,10 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
         BitSet weekCode = placement.getTimeLocation().getWeekCode();
         InstructorConstraintContext context = getContext(assignment);
         
-        for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-            int slot = e.nextElement();
+        for (int slot: placement.getTimeLocation().getSlotsArray()) {
+            if (context.isFree(slot, weekCode)) continue;
             for (Placement p : context.getPlacements(slot)) {
-                if (!p.equals(current) && p.getTimeLocation().shareWeeks(weekCode)) {
+                if (!p.equals(current) && p.getTimeLocation().shareWeeks(placement.getTimeLocation())) {
                     if (p.canShareRooms(placement) && p.sameRooms(placement))
                         continue;
                     return true;
@@ -287,8 +286,7 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
             }
         }
         if (!iIgnoreDistances) {
-            for (Enumeration<Integer> e = placement.getTimeLocation().getStartSlots(); e.hasMoreElements();) {
-                int startSlot = e.nextElement();
+            for (int startSlot: placement.getTimeLocation().getStartSlotsArray()) {
                 
                 int prevSlot = startSlot - 1;
                 if (prevSlot >= 0 && (prevSlot / Constants.SLOTS_PER_DAY) == (startSlot / Constants.SLOTS_PER_DAY)) {
@@ -356,8 +354,7 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
         HashSet<Placement> checked = new HashSet<Placement>();
         InstructorConstraintContext context = getContext(assignment);
         
-        for (Enumeration<Integer> e = placement.getTimeLocation().getStartSlots(); e.hasMoreElements();) {
-            int startSlot = e.nextElement();
+        for (int startSlot: placement.getTimeLocation().getStartSlotsArray()) {
             
             int prevSlot = startSlot - 1;
             if (prevSlot >= 0 && (prevSlot / Constants.SLOTS_PER_DAY) == (startSlot / Constants.SLOTS_PER_DAY)) {
@@ -452,8 +449,7 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
         HashSet<Placement> checked = new HashSet<Placement>();
         InstructorConstraintContext context = getContext(assignment);
         
-        for (Enumeration<Integer> e = placement.getTimeLocation().getStartSlots(); e.hasMoreElements();) {
-            int startSlot = e.nextElement();
+        for (int startSlot: placement.getTimeLocation().getStartSlotsArray()) {
             
             int prevSlot = startSlot - 1;
             if (prevSlot >= 0 && (prevSlot / Constants.SLOTS_PER_DAY) == (startSlot / Constants.SLOTS_PER_DAY)) {
@@ -570,22 +566,46 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
         return new InstructorConstraintContext(assignment);
     }
 
+    /**
+     * Assignment context of the instructor constraint. Besides the placements of the instructor
+     * indexed by time slots, the context keeps the back-to-back and long-travel contributions
+     * of each assigned placement so that the overall back-to-back preference is updated only
+     * for the placements that are adjacent in time to the changed one. The full computation
+     * ({@link InstructorConstraintContext#countPreference(Assignment)}) is only used when the
+     * context is created.
+     */
     public class InstructorConstraintContext implements AssignmentConstraintContext<Lecture, Placement> {
         public int iPreference = 0;
         protected List<Placement>[] iResource;
+        private WeekSlotOccupancy iOccupancy;
+        /** Back-to-back preference between a placement and the first placement that follows it */
+        private Map<Placement, Integer> iBackToBack = new HashMap<Placement, Integer>();
+        /** The closest placement (or unavailability) that precedes the given placement */
+        private Map<Placement, Placement> iBefore = new HashMap<Placement, Placement>();
+        /** Long travel preference between a placement and its closest preceding placement */
+        private Map<Placement, Integer> iLongTravel = new HashMap<Placement, Integer>();
  
         @SuppressWarnings("unchecked")
         public InstructorConstraintContext(Assignment<Lecture, Placement> assignment) {
             iResource = new List[Constants.SLOTS_PER_DAY * Constants.DAY_CODES.length];
             for (int i = 0; i < iResource.length; i++)
                 iResource[i] = new ArrayList<Placement>(3);
+            iOccupancy = new WeekSlotOccupancy(iResource.length);
             for (Lecture lecture: variables()) {
                 Placement placement = assignment.getValue(lecture);
                 if (placement != null) {
-                    for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-                        int slot = e.nextElement();
+                    for (int slot: placement.getTimeLocation().getSlotsArray()) {
                         iResource[slot].add(placement);
                     }
+                    iOccupancy.add(placement.getTimeLocation());
+                }
+            }
+            for (Lecture lecture: variables()) {
+                Placement placement = assignment.getValue(lecture);
+                if (placement != null) {
+                    updateBackToBack(placement);
+                    if (getDistanceMetric().doComputeDistanceConflictsBetweenNonBTBClasses())
+                        updateLongTravel(assignment, placement);
                 }
             }
             iPreference = countPreference(assignment);
@@ -594,28 +614,184 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
 
         @Override
         public void assigned(Assignment<Lecture, Placement> assignment, Placement placement) {
-            for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-                int slot = e.nextElement();
+            for (int slot: placement.getTimeLocation().getSlotsArray()) {
                 iResource[slot].add(placement);
             }
-            getModel().getCriterion(BackToBackInstructorPreferences.class).inc(assignment, -iPreference);
-            iPreference = countPreference(assignment);
-            getModel().getCriterion(BackToBackInstructorPreferences.class).inc(assignment, iPreference);
+            iOccupancy.add(placement.getTimeLocation());
+            int delta = updateBackToBack(placement) + updatePreceding(placement);
+            if (getDistanceMetric().doComputeDistanceConflictsBetweenNonBTBClasses()) {
+                delta += countNonBackToBack(assignment, placement);
+                delta += updateLongTravel(assignment, placement);
+                TimeLocation t2 = placement.getTimeLocation();
+                for (Lecture lecture: variables()) {
+                    Placement p1 = assignment.getValue(lecture);
+                    if (p1 == null || lecture.equals(placement.variable())) continue;
+                    TimeLocation t1 = p1.getTimeLocation();
+                    if (!t1.shareDays(t2) || !t1.shareWeeks(t2) || t2.getStartSlot() + t2.getLength() > t1.getStartSlot()) continue;
+                    // the new placement may become the closest preceding placement (ties are resolved by a recount)
+                    Placement before = iBefore.get(p1);
+                    if (before == null || before.getTimeLocation().getStartSlot() <= t2.getStartSlot())
+                        delta += updateLongTravel(assignment, p1);
+                }
+            }
+            if (delta != 0) {
+                iPreference += delta;
+                getModel().getCriterion(BackToBackInstructorPreferences.class).inc(assignment, delta);
+            }
         }
         
         @Override
         public void unassigned(Assignment<Lecture, Placement> assignment, Placement placement) {
-            for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-                int slot = e.nextElement();
+            for (int slot: placement.getTimeLocation().getSlotsArray()) {
                 iResource[slot].remove(placement);
             }
-            getModel().getCriterion(BackToBackInstructorPreferences.class).inc(assignment, -iPreference);
-            iPreference = countPreference(assignment);
-            getModel().getCriterion(BackToBackInstructorPreferences.class).inc(assignment, iPreference);
+            iOccupancy.update(placement.getTimeLocation(), iResource);
+            Integer backToBack = iBackToBack.remove(placement);
+            int delta = (backToBack == null ? 0 : -backToBack) + updatePreceding(placement);
+            if (getDistanceMetric().doComputeDistanceConflictsBetweenNonBTBClasses()) {
+                delta -= countNonBackToBack(assignment, placement);
+                Integer longTravel = iLongTravel.remove(placement);
+                if (longTravel != null) delta -= longTravel;
+                iBefore.remove(placement);
+                for (Lecture lecture: variables()) {
+                    Placement p1 = assignment.getValue(lecture);
+                    if (p1 == null || lecture.equals(placement.variable())) continue;
+                    if (placement.equals(iBefore.get(p1)))
+                        delta += updateLongTravel(assignment, p1);
+                }
+            }
+            if (delta != 0) {
+                iPreference += delta;
+                getModel().getCriterion(BackToBackInstructorPreferences.class).inc(assignment, delta);
+            }
+        }
+        
+        /**
+         * Recompute the back-to-back preference of the given placement, that is the preference between the placement
+         * and the first placement that follows it (as counted by {@link InstructorConstraintContext#countPreference(Assignment)}).
+         * @param c an assigned placement
+         * @return change in the overall preference
+         */
+        private int updateBackToBack(Placement c) {
+            int pref = 0;
+            slots: for (int slot: c.getTimeLocation().getSlotsArray()) {
+                if (((slot + 1) % Constants.SLOTS_PER_DAY) == 0 || slot + 1 >= getNrSlots() || isFree(slot + 1, c.getTimeLocation().getWeekCode())) continue;
+                for (Placement placement : iResource[slot + 1]) {
+                    if (placement.variable().equals(c.variable()) || !placement.getTimeLocation().shareWeeks(c.getTimeLocation())) continue;
+                    double dist = Placement.getDistanceInMeters(getDistanceMetric(), c, placement);
+                    if (dist > getDistanceMetric().getInstructorNoPreferenceLimit() && dist <= getDistanceMetric().getInstructorDiscouragedLimit())
+                        pref += Constants.sPreferenceLevelDiscouraged;
+                    if (dist > getDistanceMetric().getInstructorDiscouragedLimit())
+                        pref += Constants.sPreferenceLevelStronglyDiscouraged;
+                    break slots;
+                }
+            }
+            Integer old = iBackToBack.put(c, pref);
+            return pref - (old == null ? 0 : old);
+        }
+        
+        /**
+         * Recompute the back-to-back preferences of all the placements that precede the given (changed) placement
+         * @param placement a placement that has been assigned or unassigned
+         * @return change in the overall preference
+         */
+        private int updatePreceding(Placement placement) {
+            int delta = 0;
+            for (int slot: placement.getTimeLocation().getSlotsArray()) {
+                if ((slot % Constants.SLOTS_PER_DAY) == 0 || isFree(slot - 1, placement.getTimeLocation().getWeekCode())) continue;
+                for (Placement c : iResource[slot - 1]) {
+                    if (placement.variable().equals(c.variable()) || !c.getTimeLocation().shareWeeks(placement.getTimeLocation())) continue;
+                    delta += updateBackToBack(c);
+                }
+            }
+            return delta;
+        }
+        
+        /**
+         * Distance preference between the given placement and the other assigned placements of the instructor
+         * that are not back-to-back with it (but share days and weeks)
+         * @param assignment current assignment
+         * @param placement a placement
+         * @return non-back-to-back distance preference of the given placement
+         */
+        private int countNonBackToBack(Assignment<Lecture, Placement> assignment, Placement placement) {
+            int pref = 0;
+            TimeLocation t1 = placement.getTimeLocation();
+            for (Lecture other: variables()) {
+                Placement otherPlacement = assignment.getValue(other);
+                if (otherPlacement == null || other.equals(placement.variable())) continue;
+                TimeLocation t2 = otherPlacement.getTimeLocation();
+                if (t2 == null || !t1.shareDays(t2) || !t1.shareWeeks(t2)) continue;
+                if (t2.getStartSlot() + t2.getLength() < t1.getStartSlot()) {
+                    int distanceInMinutes = Placement.getDistanceInMinutes(getDistanceMetric(), placement, otherPlacement);
+                    if (distanceInMinutes > t2.getBreakTime() + Constants.SLOT_LENGTH_MIN * (t1.getStartSlot() - t2.getStartSlot() - t2.getLength()))
+                        pref += (iIgnoreDistances ? Constants.sPreferenceLevelStronglyDiscouraged : Constants.sPreferenceLevelProhibited);
+                    else if (distanceInMinutes > Constants.SLOT_LENGTH_MIN * (t1.getStartSlot() - t2.getStartSlot() - t2.getLength()))
+                        pref += Constants.sPreferenceLevelDiscouraged;
+                } else if (t1.getStartSlot() + t1.getLength() < t2.getStartSlot()) {
+                    int distanceInMinutes = Placement.getDistanceInMinutes(getDistanceMetric(), otherPlacement, placement);
+                    if (distanceInMinutes > t1.getBreakTime() + Constants.SLOT_LENGTH_MIN * (t2.getStartSlot() - t1.getStartSlot() - t1.getLength()))
+                        pref += (iIgnoreDistances ? Constants.sPreferenceLevelStronglyDiscouraged : Constants.sPreferenceLevelProhibited);
+                    else if (distanceInMinutes > Constants.SLOT_LENGTH_MIN * (t2.getStartSlot() - t1.getStartSlot() - t1.getLength()))
+                        pref += Constants.sPreferenceLevelDiscouraged;
+                }
+            }
+            return pref;
+        }
+        
+        /**
+         * Recompute the closest preceding placement (or unavailability) of the given placement and the appropriate
+         * long travel preference
+         * @param assignment current assignment
+         * @param p1 an assigned placement
+         * @return change in the overall preference
+         */
+        private int updateLongTravel(Assignment<Lecture, Placement> assignment, Placement p1) {
+            TimeLocation t1 = p1.getTimeLocation();
+            Placement before = null;
+            for (Lecture l2: variables()) {
+                Placement p2 = assignment.getValue(l2);
+                if (p2 == null || l2.equals(p1.variable())) continue;
+                TimeLocation t2 = p2.getTimeLocation();
+                if (t2 == null || !t1.shareDays(t2) || !t1.shareWeeks(t2)) continue;
+                if (t2.getStartSlot() + t2.getLength() <= t1.getStartSlot()) {
+                    if (before == null || before.getTimeLocation().getStartSlot() < t2.getStartSlot())
+                        before = p2;
+                }
+            }
+            if (iUnavailabilities != null) {
+                for (Placement c: iUnavailabilities) {
+                    TimeLocation t2 = c.getTimeLocation();
+                    if (t2 == null || !t1.shareDays(t2) || !t1.shareWeeks(t2)) continue;
+                    if (t2.getStartSlot() + t2.getLength() <= t1.getStartSlot()) {
+                        if (before == null || before.getTimeLocation().getStartSlot() < t2.getStartSlot())
+                            before = c;
+                    }
+                }
+            }
+            int pref = 0;
+            if (before != null && Placement.getDistanceInMinutes(getDistanceMetric(), before, p1) > getDistanceMetric().getInstructorLongTravelInMinutes())
+                pref += Constants.sPreferenceLevelStronglyDiscouraged;
+            iBefore.put(p1, before);
+            Integer old = iLongTravel.put(p1, pref);
+            return pref - (old == null ? 0 : old);
         }
         
         public List<Placement> getPlacements(int slot) { return iResource[slot]; }
         
+        /**
+         * Check whether the instructor is not teaching in the given slot and weeks
+         * @param slot time slot
+         * @param weekCode date pattern
+         * @return true if there is no placement in the given slot that shares weeks with the given date pattern
+         */
+        public boolean isFree(int slot, BitSet weekCode) { return iOccupancy.isFree(slot, weekCode); }
+        
+        /** Week &times; slot occupancy index of the instructor
+         * @return occupancy index
+         */
+        public WeekSlotOccupancy getOccupancy() { return iOccupancy; }
+        
         public Placement getPlacement(int slot, int day) {
             for (Placement p : iResource[slot]) {
                 if (p.getTimeLocation().hasDay(day))
@@ -625,6 +801,7 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
         }
         
         public List<Placement> getPlacements(int slot, BitSet weekCode) {
+            if (iOccupancy.isFree(slot, weekCode)) return new ArrayList<Placement>(0);
             List<Placement> placements = new ArrayList<Placement>(iResource[slot].size());
             for (Placement p : iResource[slot]) {
                 if (p.getTimeLocation().shareWeeks(weekCode))
@@ -634,7 +811,14 @@ public class InstructorConstraint extends ConstraintWithContext<Lecture, Placeme
         }
         
         public List<Placement> getPlacements(int slot, Placement placement) {
-            return getPlacements(slot, placement.getTimeLocation().getWeekCode());
+            TimeLocation time = placement.getTimeLocation();
+            if (iOccupancy.isFree(slot, time.getWeekCode())) return new ArrayList<Placement>(0);
+            List<Placement> placements = new ArrayList<Placement>(iResource[slot].size());
+            for (Placement p : iResource[slot]) {
+                if (p.getTimeLocation().shareWeeks(time))
+                    placements.add(p);
+            }
+            return placements;
         }
         
         public int getNrSlots() { return iResource.length; }
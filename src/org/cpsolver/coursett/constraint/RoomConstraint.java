@@ -2,7 +2,6 @@ package org.cpsolver.coursett.constraint;
 
 import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -17,6 +16,8 @@ import org.cpsolver.coursett.model.TimeLocation;
 import org.cpsolver.ifs.assignment.Assignment;
 import org.cpsolver.ifs.assignment.context.AssignmentConstraintContext;
 import org.cpsolver.ifs.assignment.context.ConstraintWithContext;
+import org.cpsolver.ifs.criteria.AbstractCriterion;
+import org.cpsolver.ifs.criteria.Criterion;
 
 
 /**
@@ -44,11 +45,13 @@ import org.cpsolver.ifs.assignment.context.ConstraintWithContext;
  */
 
 public class RoomConstraint extends ConstraintWithContext<Lecture, Placement, RoomConstraint.RoomConstraintContext> {
+    private static org.apache.log4j.Logger sLogger = org.apache.log4j.Logger.getLogger(RoomConstraint.class);
     private Long iResourceId;
     private String iName;
     private Long iBuildingId;
     private int iCapacity = 0;
     private List<Placement>[] iAvailable = null;
+    private WeekSlotOccupancy iNotAvailable = null;
     private boolean iConstraint = true;
 
     private Double iPosX = null, iPosY = null;
@@ -89,13 +92,14 @@ public class RoomConstraint extends ConstraintWithContext<Lecture, Placement, Ro
             iAvailable = new List[Constants.SLOTS_PER_DAY * Constants.NR_DAYS];
             for (int i = 0; i < iAvailable.length; i++)
                 iAvailable[i] = null;
+            iNotAvailable = new WeekSlotOccupancy(iAvailable.length);
         }
-        for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-            int slot = e.nextElement();
+        for (int slot: placement.getTimeLocation().getSlotsArray()) {
             if (iAvailable[slot] == null)
                 iAvailable[slot] = new ArrayList<Placement>(1);
             iAvailable[slot].add(placement);
         }
+        iNotAvailable.add(placement.getTimeLocation());
         for (Lecture lecture: variables())
             lecture.clearValueCache();
     }
@@ -110,9 +114,8 @@ public class RoomConstraint extends ConstraintWithContext<Lecture, Placement, Ro
 
     public boolean isAvailable(Lecture lecture, TimeLocation time, Long scheduler) {
         if (iAvailable != null) {
-            for (Enumeration<Integer> e = time.getSlots(); e.hasMoreElements();) {
-                int slot = e.nextElement();
-                if (iAvailable[slot] != null) {
+            for (int slot: time.getSlotsArray()) {
+                if (iAvailable[slot] != null && !iNotAvailable.isFree(slot, time.getWeekCode())) {
                     for (Placement p : iAvailable[slot]) {
                         if (lecture.canShareRoom(p.variable()))
                             continue;
@@ -180,10 +183,11 @@ public class RoomConstraint extends ConstraintWithContext<Lecture, Placement, Ro
         BitSet weekCode = placement.getTimeLocation().getWeekCode();
         RoomConstraintContext context = getContext(assignment);
 
-        for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-            int slot = e.nextElement();
+        for (int slot: placement.getTimeLocation().getSlotsArray()) {
+            if (context.isFree(slot, weekCode))
+                continue;
             for (Placement confPlacement : context.getPlacements(slot)) {
-                if (!confPlacement.getTimeLocation().shareWeeks(weekCode))
+                if (!confPlacement.getTimeLocation().shareWeeks(placement.getTimeLocation()))
                     continue;
                 if (confPlacement.equals(current))
                     continue;
@@ -216,10 +220,11 @@ public class RoomConstraint extends ConstraintWithContext<Lecture, Placement, Ro
         BitSet weekCode = placement.getTimeLocation().getWeekCode();
         RoomConstraintContext context = getContext(assignment);
 
-        for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-            int slot = e.nextElement();
+        for (int slot: placement.getTimeLocation().getSlotsArray()) {
+            if (context.isFree(slot, weekCode))
+                continue;
             for (Placement confPlacement : context.getPlacements(slot)) {
-                if (!confPlacement.getTimeLocation().shareWeeks(weekCode))
+                if (!confPlacement.getTimeLocation().shareWeeks(placement.getTimeLocation()))
                     continue;
                 if (confPlacement.equals(current))
                     continue;
@@ -332,63 +337,109 @@ public class RoomConstraint extends ConstraintWithContext<Lecture, Placement, Ro
 
     public class RoomConstraintContext implements AssignmentConstraintContext<Lecture, Placement> {
         private List<Placement>[] iResource;
+        private WeekSlotOccupancy iOccupancy;
         private int iLastUselessHalfHours = 0;
-        private double iLastBrokenTimePatterns = 0;
+        private int iLastBrokenTimePatterns = 0;
  
         @SuppressWarnings("unchecked")
         public RoomConstraintContext(Assignment<Lecture, Placement> assignment) {
             iResource = new List[Constants.SLOTS_PER_DAY * Constants.NR_DAYS];
             for (int i = 0; i < iResource.length; i++)
                 iResource[i] = new ArrayList<Placement>(3);
+            iOccupancy = new WeekSlotOccupancy(iResource.length);
             for (Lecture lecture: variables()) {
                 Placement placement = assignment.getValue(lecture);
                 if (placement != null && placement.hasRoomLocation(getResourceId())) {
-                    for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-                        int slot = e.nextElement();
+                    for (int slot: placement.getTimeLocation().getSlotsArray()) {
                         iResource[slot].add(placement);
                     }
+                    iOccupancy.add(placement.getTimeLocation());
                 }
             }
             iLastUselessHalfHours = UselessHalfHours.countUselessSlotsHalfHours(this);
             getModel().getCriterion(UselessHalfHours.class).inc(assignment, iLastUselessHalfHours);
-            iLastBrokenTimePatterns = BrokenTimePatterns.countUselessSlotsBrokenTimePatterns(this) / 6.0;
-            getModel().getCriterion(BrokenTimePatterns.class).inc(assignment, iLastBrokenTimePatterns);
+            iLastBrokenTimePatterns = BrokenTimePatterns.countUselessSlotsBrokenTimePatterns(this);
+            getModel().getCriterion(BrokenTimePatterns.class).inc(assignment, iLastBrokenTimePatterns / 6.0);
         }
 
         @Override
         public void assigned(Assignment<Lecture, Placement> assignment, Placement placement) {
             if (!placement.hasRoomLocation(getResourceId()))
                 return;
-            for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-                int slot = e.nextElement();
+            TimeLocation time = placement.getTimeLocation();
+            int useless = iLastUselessHalfHours - UselessHalfHours.countUselessSlotsHalfHoursAround(this, time);
+            int broken = iLastBrokenTimePatterns - BrokenTimePatterns.countUselessSlotsBrokenTimePatternsAround(this, time);
+            for (int slot: time.getSlotsArray()) {
                 iResource[slot].add(placement);
             }
-            getModel().getCriterion(UselessHalfHours.class).inc(assignment, -iLastUselessHalfHours);
-            iLastUselessHalfHours = UselessHalfHours.countUselessSlotsHalfHours(this);
-            getModel().getCriterion(UselessHalfHours.class).inc(assignment, iLastUselessHalfHours);
-            getModel().getCriterion(BrokenTimePatterns.class).inc(assignment, -iLastBrokenTimePatterns);
-            iLastBrokenTimePatterns = BrokenTimePatterns.countUselessSlotsBrokenTimePatterns(this) / 6.0;
-            getModel().getCriterion(BrokenTimePatterns.class).inc(assignment, iLastBrokenTimePatterns);
+            iOccupancy.add(time);
+            useless += UselessHalfHours.countUselessSlotsHalfHoursAround(this, time);
+            broken += BrokenTimePatterns.countUselessSlotsBrokenTimePatternsAround(this, time);
+            update(assignment, useless, broken);
         }
         
         @Override
         public void unassigned(Assignment<Lecture, Placement> assignment, Placement placement) {
             if (!placement.hasRoomLocation(getResourceId()))
                 return;
-            for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-                int slot = e.nextElement();
+            TimeLocation time = placement.getTimeLocation();
+            int useless = iLastUselessHalfHours - UselessHalfHours.countUselessSlotsHalfHoursAround(this, time);
+            int broken = iLastBrokenTimePatterns - BrokenTimePatterns.countUselessSlotsBrokenTimePatternsAround(this, time);
+            for (int slot: time.getSlotsArray()) {
                 iResource[slot].remove(placement);
             }
-            getModel().getCriterion(UselessHalfHours.class).inc(assignment, -iLastUselessHalfHours);
-            iLastUselessHalfHours = UselessHalfHours.countUselessSlotsHalfHours(this);
-            getModel().getCriterion(UselessHalfHours.class).inc(assignment, iLastUselessHalfHours);
-            getModel().getCriterion(BrokenTimePatterns.class).inc(assignment, -iLastBrokenTimePatterns);
-            iLastBrokenTimePatterns = BrokenTimePatterns.countUselessSlotsBrokenTimePatterns(this) / 6.0;
-            getModel().getCriterion(BrokenTimePatterns.class).inc(assignment, iLastBrokenTimePatterns);
+            iOccupancy.update(time, iResource);
+            useless += UselessHalfHours.countUselessSlotsHalfHoursAround(this, time);
+            broken += BrokenTimePatterns.countUselessSlotsBrokenTimePatternsAround(this, time);
+            update(assignment, useless, broken);
+        }
+        
+        /**
+         * Update useless half-hours and broken time patterns criteria with the new (incrementally computed) counts.
+         * When a criterion is in the debug mode, the counts are checked against a full recount.
+         */
+        private void update(Assignment<Lecture, Placement> assignment, int useless, int broken) {
+            Criterion<Lecture, Placement> uselessHalfHours = getModel().getCriterion(UselessHalfHours.class);
+            Criterion<Lecture, Placement> brokenTimePatterns = getModel().getCriterion(BrokenTimePatterns.class);
+            if (uselessHalfHours instanceof AbstractCriterion && ((AbstractCriterion<Lecture, Placement>)uselessHalfHours).isDebug()) {
+                int check = UselessHalfHours.countUselessSlotsHalfHours(this);
+                if (check != useless) {
+                    sLogger.error("Useless half-hours of " + getName() + " do not match (expected " + check + ", was " + useless + ").");
+                    useless = check;
+                }
+            }
+            if (brokenTimePatterns instanceof AbstractCriterion && ((AbstractCriterion<Lecture, Placement>)brokenTimePatterns).isDebug()) {
+                int check = BrokenTimePatterns.countUselessSlotsBrokenTimePatterns(this);
+                if (check != broken) {
+                    sLogger.error("Broken time patterns of " + getName() + " do not match (expected " + check + ", was " + broken + ").");
+                    broken = check;
+                }
+            }
+            if (useless != iLastUselessHalfHours) {
+                uselessHalfHours.inc(assignment, useless - iLastUselessHalfHours);
+                iLastUselessHalfHours = useless;
+            }
+            if (broken != iLastBrokenTimePatterns) {
+                brokenTimePatterns.inc(assignment, (broken - iLastBrokenTimePatterns) / 6.0);
+                iLastBrokenTimePatterns = broken;
+            }
         }
         
         public List<Placement> getPlacements(int slot) { return iResource[slot]; }
         
+        /**
+         * Check whether the room is not used in the given slot and weeks
+         * @param slot time slot
+         * @param weekCode date pattern
+         * @return true if there is no placement in the given slot that shares weeks with the given date pattern
+         */
+        public boolean isFree(int slot, BitSet weekCode) { return iOccupancy.isFree(slot, weekCode); }
+        
+        /** Week &times; slot occupancy index of the room
+         * @return occupancy index
+         */
+        public WeekSlotOccupancy getOccupancy() { return iOccupancy; }
+        
         public Placement getPlacement(int slot, int day) {
             for (Placement p : iResource[slot]) {
                 if (p.getTimeLocation().hasDay(day))
@@ -406,10 +457,10 @@ public class RoomConstraint extends ConstraintWithContext<Lecture, Placement, Ro
         }
         
         public boolean inConflict(Lecture lecture, TimeLocation time) {
-            for (Enumeration<Integer> e = time.getSlots(); e.hasMoreElements();) {
-                int slot = e.nextElement();
+            for (int slot: time.getSlotsArray()) {
+                if (isFree(slot, time.getWeekCode())) continue;
                 for (Placement confPlacement : getPlacements(slot)) {
-                    if (!confPlacement.getTimeLocation().shareWeeks(time.getWeekCode())) continue;
+                    if (!confPlacement.getTimeLocation().shareWeeks(time)) continue;
                     if (confPlacement.variable().equals(lecture)) continue;
                     if (!confPlacement.variable().canShareRoom(lecture)) return true;
                 }
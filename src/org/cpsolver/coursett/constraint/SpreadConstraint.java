@@ -1,6 +1,5 @@
 package org.cpsolver.coursett.constraint;
 
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -381,8 +380,7 @@ public class SpreadConstraint extends ConstraintWithContext<Lecture, Placement,
     public int getMaxPenalty(Assignment<Lecture, Placement> assignment, Placement placement) {
         SpreadConstraintContext context = getContext(assignment);
         int penalty = 0;
-        for (Enumeration<Integer> e = placement.getTimeLocation().getSlots(); e.hasMoreElements();) {
-            int slot = e.nextElement();
+        for (int slot: placement.getTimeLocation().getSlotsArray()) {
             int day = slot / Constants.SLOTS_PER_DAY;
             int time = slot % Constants.SLOTS_PER_DAY;
             if (time < iFirstDaySlot || time > iLastDaySlot)
@@ -0,0 +1,120 @@
+package org.cpsolver.coursett.constraint;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.cpsolver.coursett.model.Placement;
+import org.cpsolver.coursett.model.TimeLocation;
+
+/**
+ * Week &times; slot occupancy index of a resource (room or instructor). <br>
+ * <br>
+ * For each time slot of the week, the index keeps the union of the date
+ * patterns (week codes) of all the placements that use the slot. This makes it
+ * possible to check whether a slot is free in the given weeks using a few
+ * word-level bit operations, without iterating over the placements of the slot
+ * and comparing their date patterns one by one. Only when the slot is used in
+ * some of the given weeks, the placements of the slot need to be checked (e.g.,
+ * because of room sharing).
+ *
+ * @version CourseTT 1.3 (University Course Timetabling)<br>
+ *          Copyright (C) 2006 - 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ */
+public class WeekSlotOccupancy {
+    private BitSet[] iWeeks;
+
+    /**
+     * Constructor
+     * @param nrSlots number of time slots (e.g., {@link org.cpsolver.coursett.Constants#SLOTS_PER_DAY} &times; {@link org.cpsolver.coursett.Constants#NR_DAYS})
+     */
+    public WeekSlotOccupancy(int nrSlots) {
+        iWeeks = new BitSet[nrSlots];
+    }
+
+    /**
+     * Mark the slots and weeks of the given time as used
+     * @param time time location of a placement that has been added to the resource
+     */
+    public void add(TimeLocation time) {
+        for (int slot : time.getSlotsArray()) {
+            if (iWeeks[slot] == null)
+                iWeeks[slot] = (BitSet) time.getWeekCode().clone();
+            else
+                iWeeks[slot].or(time.getWeekCode());
+        }
+    }
+
+    /**
+     * Recompute the occupancy of the given slot (to be called when a placement has been removed from the slot)
+     * @param slot time slot
+     * @param placements placements that remain in the slot
+     */
+    public void update(int slot, Collection<Placement> placements) {
+        if (placements.isEmpty()) {
+            iWeeks[slot] = null;
+        } else {
+            BitSet weeks = iWeeks[slot];
+            weeks.clear();
+            for (Placement placement : placements)
+                weeks.or(placement.getTimeLocation().getWeekCode());
+        }
+    }
+
+    /**
+     * Recompute the occupancy of the slots of the given time
+     * @param time time location of a placement that has been removed from the resource
+     * @param resource placements of the resource, indexed by time slots
+     */
+    public void update(TimeLocation time, Collection<Placement>[] resource) {
+        for (int slot : time.getSlotsArray())
+            update(slot, resource[slot]);
+    }
+
+    /**
+     * Check whether the given slot is free in the given weeks
+     * @param slot time slot
+     * @param weekCode date pattern
+     * @return true if there is no placement in the slot that shares weeks with the given date pattern
+     */
+    public boolean isFree(int slot, BitSet weekCode) {
+        BitSet weeks = iWeeks[slot];
+        return weeks == null || !weeks.intersects(weekCode);
+    }
+
+    /**
+     * Check whether all the slots of the given time are free in its weeks
+     * @param time time location
+     * @return true if there is no placement that overlaps with the given time
+     */
+    public boolean isFree(TimeLocation time) {
+        for (int slot : time.getSlotsArray())
+            if (!isFree(slot, time.getWeekCode()))
+                return false;
+        return true;
+    }
+
+    /**
+     * Weeks in which the given slot is used
+     * @param slot time slot
+     * @return union of the date patterns of the placements in the slot, null if the slot is not used
+     */
+    public BitSet getWeeks(int slot) {
+        return iWeeks[slot];
+    }
+}
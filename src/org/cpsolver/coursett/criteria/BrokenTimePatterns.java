@@ -199,6 +199,25 @@ public class BrokenTimePatterns extends TimetablingCriterion {
         return ret;
     }
     
+    private static boolean isBroken(RoomConstraintContext rc, int d, int s) {
+        if (!rc.getPlacements(d * Constants.SLOTS_PER_DAY + s).isEmpty())
+            return false;
+        switch (d) {
+            case 0:
+                return !rc.getPlacements(2 * Constants.SLOTS_PER_DAY + s).isEmpty() && !rc.getPlacements(4 * Constants.SLOTS_PER_DAY + s).isEmpty();
+            case 1:
+                return !rc.getPlacements(3 * Constants.SLOTS_PER_DAY + s).isEmpty();
+            case 2:
+                return !rc.getPlacements(0 * Constants.SLOTS_PER_DAY + s).isEmpty() && !rc.getPlacements(4 * Constants.SLOTS_PER_DAY + s).isEmpty();
+            case 3:
+                return !rc.getPlacements(1 * Constants.SLOTS_PER_DAY + s).isEmpty();
+            case 4:
+                return !rc.getPlacements(0 * Constants.SLOTS_PER_DAY + s).isEmpty() && !rc.getPlacements(2 * Constants.SLOTS_PER_DAY + s).isEmpty();
+            default:
+                return false;
+        }
+    }
+    
     /** Number of useless slots for this room 
      * @param rc room constraint
      * @return current penalty for the given room
@@ -207,31 +226,35 @@ public class BrokenTimePatterns extends TimetablingCriterion {
         int ret = 0;
         for (int d = 0; d < Constants.NR_DAYS; d++) {
             for (int s = 0; s < Constants.SLOTS_PER_DAY; s++) {
-                int slot = d * Constants.SLOTS_PER_DAY + s;
-                if (rc.getPlacements(slot).isEmpty()) {
-                    switch (d) {
-                        case 0:
-                            if (!rc.getPlacements(2 * Constants.SLOTS_PER_DAY + s).isEmpty() && !rc.getPlacements(4 * Constants.SLOTS_PER_DAY + s).isEmpty())
-                                ret++;
-                            break;
-                        case 1:
-                            if (!rc.getPlacements(3 * Constants.SLOTS_PER_DAY + s).isEmpty())
-                                ret++;
-                            break;
-                        case 2:
-                            if (!rc.getPlacements(0 * Constants.SLOTS_PER_DAY + s).isEmpty() && !rc.getPlacements(4 * Constants.SLOTS_PER_DAY + s).isEmpty())
-                                ret++;
-                            break;
-                        case 3:
-                            if (!rc.getPlacements(1 * Constants.SLOTS_PER_DAY + s).isEmpty())
-                                ret++;
-                            break;
-                        case 4:
-                            if (!rc.getPlacements(0 * Constants.SLOTS_PER_DAY + s).isEmpty() && !rc.getPlacements(2 * Constants.SLOTS_PER_DAY + s).isEmpty())
-                                ret++;
-                            break;
-                    }
-                }
+                if (isBroken(rc, d, s))
+                    ret++;
+            }
+        }
+        return ret;
+    }
+    
+    /** Number of useless slots for this room, only counting the slots that can change when
+     * the given time is added to or removed from the room. The difference of this count before and after the change
+     * is equal to the change of {@link BrokenTimePatterns#countUselessSlotsBrokenTimePatterns(RoomConstraintContext)}.
+     * @param rc room constraint
+     * @param time time that is being added or removed
+     * @return penalty of the affected slots for the given room
+     **/
+    public static int countUselessSlotsBrokenTimePatternsAround(RoomConstraintContext rc, TimeLocation time) {
+        int ret = 0;
+        boolean mwf = (time.getDayCode() & sDaysMWF) != 0;
+        boolean tth = (time.getDayCode() & sDaysTTh) != 0;
+        if (!mwf && !tth) return 0;
+        int end = Math.min(time.getStartSlot() + time.getLength(), Constants.SLOTS_PER_DAY);
+        for (int s = time.getStartSlot(); s < end; s++) {
+            if (mwf) {
+                if (isBroken(rc, 0, s)) ret++;
+                if (isBroken(rc, 2, s)) ret++;
+                if (isBroken(rc, 4, s)) ret++;
+            }
+            if (tth) {
+                if (isBroken(rc, 1, s)) ret++;
+                if (isBroken(rc, 3, s)) ret++;
             }
         }
         return ret;
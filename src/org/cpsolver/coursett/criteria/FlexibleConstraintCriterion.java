@@ -48,7 +48,7 @@ public class FlexibleConstraintCriterion extends TimetablingCriterion  {
     @Override
     public void configure(DataProperties properties) {   
         super.configure(properties);
-        iWeight = properties.getPropertyDouble("FlexibleConstraint.Weight", 1.0d); 
+        setWeight(properties.getPropertyDouble("FlexibleConstraint.Weight", 1.0d));
         iDebug = properties.getPropertyBoolean("FlexibleConstraint.Debug", true); 
     }
 
@@ -155,4 +155,28 @@ public class UselessHalfHours extends BrokenTimePatterns {
         }
         return ret;
     }
+    
+    /** Number of useless slots for this room, only counting the slots that can change when
+     * the given time is added to or removed from the room. The difference of this count before and after the change
+     * is equal to the change of {@link UselessHalfHours#countUselessSlotsHalfHours(RoomConstraintContext)}.
+     * @param rc room constraint assignment context
+     * @param time time that is being added or removed
+     * @return penalty of the affected slots for the given room
+     **/
+    public static int countUselessSlotsHalfHoursAround(RoomConstraintContext rc, TimeLocation time) {
+        int ret = 0;
+        int last = -1;
+        for (int d = 0; d < Constants.NR_DAYS; d++) {
+            if ((Constants.DAY_CODES[d] & time.getDayCode()) == 0)
+                continue;
+            int first = d * Constants.SLOTS_PER_DAY + time.getStartSlot();
+            // a slot is useless depending on the previous slot and the following six slots
+            int from = Math.max(Math.max(0, first - 6), last + 1);
+            last = Math.min(Constants.NR_DAYS * Constants.SLOTS_PER_DAY - 1, first + time.getLength());
+            for (int slot = from; slot <= last; slot++)
+                if (isUseless(rc, slot))
+                    ret++;
+        }
+        return ret;
+    }
 }
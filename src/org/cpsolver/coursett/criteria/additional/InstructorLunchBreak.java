@@ -59,7 +59,7 @@ public class InstructorLunchBreak extends TimetablingCriterion {
     public void configure(DataProperties properties) {
         super.configure(properties);
 
-        iWeight = properties.getPropertyDouble("InstructorLunch.Weight", 0.3d);
+        setWeight(properties.getPropertyDouble("InstructorLunch.Weight", 0.3d));
 
         // lunch parameters
         iLunchStart = properties.getPropertyInt("InstructorLunch.StartSlot", (11 * 60) / 5);
@@ -302,7 +302,7 @@ public class InstructorLunchBreak extends TimetablingCriterion {
                             int maxBreak = 0;
                             int currentBreak = 0;
                             for (int slot = currentLunchStartSlot; slot < currentLunchEndSlot; slot++) {
-                                if (constraint.getContext(assignment).getPlacements(slot, week).isEmpty()) {
+                                if (constraint.getContext(assignment).isFree(slot, week)) {
                                     currentBreak++;
                                     if (maxBreak < currentBreak) {
                                         maxBreak = currentBreak;
@@ -341,7 +341,7 @@ public class InstructorLunchBreak extends TimetablingCriterion {
                     int maxBreak = 0;
                     int currentBreak = 0;
                     for (int slot = currentLunchStartSlot; slot < currentLunchEndSlot; slot++) {
-                        if (constraint.getContext(assignment).getPlacements(slot, week).isEmpty()) {
+                        if (constraint.getContext(assignment).isFree(slot, week)) {
                             currentBreak++;
                             if (maxBreak < currentBreak) {
                                 maxBreak = currentBreak;
@@ -233,11 +233,11 @@ public class LectureSelection implements VariableSelection<Lecture, Placement> {
     public Lecture selectVariable(Solution<Lecture, Placement> solution) {
         TimetableModel model = (TimetableModel) solution.getModel();
         Assignment<Lecture, Placement> assignment = solution.getAssignment();
-        Collection<Lecture> unassignedVariables = model.unassignedVariables(assignment);
+        Collection<Lecture> unassignedVariables = assignment.unassignedVariablesView(model);
         if (iInteractiveMode) {
             // remove variables that have no values
             unassignedVariables = new ArrayList<Lecture>(unassignedVariables.size());
-            for (Lecture variable : model.unassignedVariables(assignment)) {
+            for (Lecture variable : assignment.unassignedVariablesView(model)) {
                 if (!variable.values(solution.getAssignment()).isEmpty())
                     unassignedVariables.add(variable);
             }
@@ -14,6 +14,7 @@ import org.cpsolver.ifs.criteria.Criterion;
 import org.cpsolver.ifs.extension.Extension;
 import org.cpsolver.ifs.extension.MacPropagation;
 import org.cpsolver.ifs.heuristics.ValueSelection;
+import org.cpsolver.ifs.model.ConflictSet;
 import org.cpsolver.ifs.solution.Solution;
 import org.cpsolver.ifs.solver.Solver;
 import org.cpsolver.ifs.util.DataProperties;
@@ -251,7 +252,7 @@ public class PlacementSelection implements ValueSelection<Lecture, Placement> {
         TimetableModel model = (TimetableModel) solution.getModel();
         Assignment<Lecture, Placement> assignment = solution.getAssignment();
         if (selectedVariable.getInitialAssignment() != null) {
-            if (iMPPLimit >= 0 && model.perturbVariables(assignment).size() >= iMPPLimit) {
+            if (iMPPLimit >= 0 && model.countPerturbVariables(assignment) >= iMPPLimit) {
                 if (!containsItselfSingletonOrCommited(model, model.conflictValues(assignment, selectedVariable.getInitialAssignment()), selectedVariable.getInitialAssignment()))
                     return selectedVariable.getInitialAssignment();
             } else if (iMPPPenaltyLimit >= 0.0 && solution.getPerturbationsCounter() != null && solution.getPerturbationsCounter().getPerturbationPenalty(assignment, model) > iMPPPenaltyLimit) {
@@ -287,53 +288,59 @@ public class PlacementSelection implements ValueSelection<Lecture, Placement> {
         List<Placement> selectionValues = null;
 
         HeuristicSelector<Placement> selector = (iUseThreshold ? new HeuristicSelector<Placement>(iThresholdKoef) : null);
-        for (Placement value : values) {
-            if (iTabu != null && iTabu.contains(value))
-                continue;
-            if (current != null && current.equals(value))
-                continue;
+        ConflictSet<Placement> conflicts = ConflictSet.acquire();
+        try {
+            for (Placement value : values) {
+                if (iTabu != null && iTabu.contains(value))
+                    continue;
+                if (current != null && current.equals(value))
+                    continue;
 
-            Set<Placement> conflicts = value.variable().getModel().conflictValues(assignment, value);
+                conflicts.clear();
+                model.computeConflicts(assignment, value, conflicts);
             
-            if (containsItselfSingletonOrCommited(model, conflicts, value))
-                continue;
-
-            if (iUseThreshold) {
-                Double flt = selector.firstLevelThreshold();
-                double[] costs = new double[NR_LEVELS];
-                for (int level = 0; level < NR_LEVELS; level++) {
-                    costs[level] = getCost(assignment, level, value, conflicts);
-                    if (level == 0 && flt != null && costs[0] > flt.doubleValue()) {
-                        break;
-                    }
-                }
-                if (flt != null && costs[0] > flt.doubleValue())
+                if (containsItselfSingletonOrCommited(model, conflicts, value))
                     continue;
-                selector.add(costs, value);
-            } else {
-                boolean fail = false;
-                boolean best = false;
-                for (int level = 0; !fail && level < 1; level++) {
-                    double val = getCost(assignment, level, value, conflicts);
-                    long cost = Math.round(PRECISION * val);
-                    if (selectionValues != null && !best) {
-                        if (cost > bestCost[level]) {
-                            fail = true;
+
+                if (iUseThreshold) {
+                    Double flt = selector.firstLevelThreshold();
+                    double[] costs = new double[NR_LEVELS];
+                    for (int level = 0; level < NR_LEVELS; level++) {
+                        costs[level] = getCost(assignment, level, value, conflicts);
+                        if (level == 0 && flt != null && costs[0] > flt.doubleValue()) {
+                            break;
                         }
-                        if (cost < bestCost[level]) {
+                    }
+                    if (flt != null && costs[0] > flt.doubleValue())
+                        continue;
+                    selector.add(costs, value);
+                } else {
+                    boolean fail = false;
+                    boolean best = false;
+                    for (int level = 0; !fail && level < 1; level++) {
+                        double val = getCost(assignment, level, value, conflicts);
+                        long cost = Math.round(PRECISION * val);
+                        if (selectionValues != null && !best) {
+                            if (cost > bestCost[level]) {
+                                fail = true;
+                            }
+                            if (cost < bestCost[level]) {
+                                bestCost[level] = cost;
+                                selectionValues.clear();
+                                best = true;
+                            }
+                        } else {
                             bestCost[level] = cost;
-                            selectionValues.clear();
-                            best = true;
                         }
-                    } else {
-                        bestCost[level] = cost;
                     }
+                    if (selectionValues == null)
+                        selectionValues = new ArrayList<Placement>(values.size());
+                    if (!fail)
+                        selectionValues.add(value);
                 }
-                if (selectionValues == null)
-                    selectionValues = new ArrayList<Placement>(values.size());
-                if (!fail)
-                    selectionValues.add(value);
             }
+        } finally {
+            conflicts.release();
         }
         // ToolBox.print("Best "+selectionValues.size()+" locations for variable "+selectedVariable.getId()+" have "+bestConflicts+" conflicts ("+bestRemovals+" weighted) and "+bestStudentConflicts+" ("+bestOriginalStudentConflicts+" * "+bestKoef+" + "+bestPenalty+") preference.");
         Placement selectedValue = null;
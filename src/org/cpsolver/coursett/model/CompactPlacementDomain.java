@@ -0,0 +1,199 @@
+package org.cpsolver.coursett.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Compact representation of the domain of a {@link Lecture}. <br>
+ * <br>
+ * Instead of keeping a {@link Placement} object for every combination of time
+ * and room(s), each value is encoded as a packed pair of a time index and a room
+ * index (or an index of a room combination for classes that need more than one
+ * room). Placements are materialized on demand and kept in a small bounded
+ * cache of the lecture (see {@link Lecture#sCompactDomainCacheSize}), so that
+ * placements that are frequently used (e.g., by the value selection) are not
+ * created over and over again. A placement that equals to the initial or the
+ * best assignment of the lecture is returned as that object. <br>
+ * <br>
+ * The list is read-only except for the removal of values (see
+ * {@link org.cpsolver.ifs.model.Variable#removeValue(long, org.cpsolver.ifs.model.Value)}).
+ * Since {@link Placement#equals(Object)} and {@link Placement#hashCode()} only
+ * depend on the lecture, the time and the rooms, two materializations of the
+ * same value are equal. The compact domain is enabled by
+ * {@link Lecture#sCompactDomain}.
+ *
+ * @version CourseTT 1.3 (University Course Timetabling)<br>
+ *          Copyright (C) 2006 - 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ */
+public class CompactPlacementDomain extends AbstractList<Placement> implements RandomAccess {
+    private Lecture iLecture;
+    private List<TimeLocation> iTimes = new ArrayList<TimeLocation>();
+    private Map<TimeLocation, Integer> iTimeIndex = new HashMap<TimeLocation, Integer>();
+    private List<RoomLocation[]> iRooms = new ArrayList<RoomLocation[]>();
+    private Map<List<RoomLocation>, Integer> iRoomIndex = new HashMap<List<RoomLocation>, Integer>();
+    private long[] iValues;
+    private int iSize = 0;
+    private Entry[] iCache;
+
+    /**
+     * Constructor
+     * @param lecture the lecture
+     * @param placements placements of the lecture (e.g., as computed by {@link Lecture#computeValues(org.cpsolver.ifs.assignment.Assignment, boolean)})
+     * @param cacheSize number of materialized placements that are kept
+     */
+    public CompactPlacementDomain(Lecture lecture, Collection<Placement> placements, int cacheSize) {
+        iLecture = lecture;
+        iValues = new long[placements.size()];
+        for (Placement placement : placements)
+            iValues[iSize++] = encode(placement, true);
+        iCache = new Entry[Math.max(1, Math.min(cacheSize, iSize))];
+    }
+
+    /**
+     * Encode the given placement as a pair of time index and room index
+     * @param placement a placement
+     * @param register register the time and the rooms if not yet known
+     * @return encoded placement, -1 if the time or the rooms are not known
+     */
+    private long encode(Placement placement, boolean register) {
+        Integer time = iTimeIndex.get(placement.getTimeLocation());
+        if (time == null) {
+            if (!register) return -1;
+            time = iTimes.size();
+            iTimes.add(placement.getTimeLocation());
+            iTimeIndex.put(placement.getTimeLocation(), time);
+        }
+        List<RoomLocation> key = (placement.isMultiRoom() ? placement.getRoomLocations() :
+            placement.getRoomLocation() == null ? new ArrayList<RoomLocation>(0) : Arrays.asList(placement.getRoomLocation()));
+        Integer room = iRoomIndex.get(key);
+        if (room == null) {
+            if (!register) return -1;
+            room = iRooms.size();
+            RoomLocation[] rooms = key.toArray(new RoomLocation[key.size()]);
+            iRooms.add(rooms);
+            iRoomIndex.put(Arrays.asList(rooms), room);
+        }
+        return (((long) time) << 32) | room.longValue();
+    }
+
+    /**
+     * Create a placement of the given encoded value
+     * @param value encoded placement
+     * @return a new placement (or the initial or best assignment of the lecture, if equal)
+     */
+    private Placement decode(long value) {
+        TimeLocation time = iTimes.get((int) (value >>> 32));
+        RoomLocation[] rooms = iRooms.get((int) (value & 0xffffffffl));
+        Placement placement = null;
+        if (rooms.length == 0)
+            placement = new Placement(iLecture, time, (RoomLocation) null);
+        else if (rooms.length == 1)
+            placement = new Placement(iLecture, time, rooms[0]);
+        else
+            placement = new Placement(iLecture, time, Arrays.asList(rooms));
+        placement.setVariable(iLecture);
+        if (iLecture.getInitialAssignment() != null && placement.equals(iLecture.getInitialAssignment()))
+            return iLecture.getInitialAssignment();
+        if (iLecture.getBestAssignment() != null && placement.equals(iLecture.getBestAssignment()))
+            return iLecture.getBestAssignment();
+        return placement;
+    }
+
+    @Override
+    public Placement get(int index) {
+        if (index < 0 || index >= iSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + iSize);
+        long value = iValues[index];
+        int slot = index % iCache.length;
+        Entry entry = iCache[slot];
+        if (entry != null && entry.iValue == value)
+            return entry.iPlacement;
+        Placement placement = decode(value);
+        iCache[slot] = new Entry(value, placement);
+        return placement;
+    }
+
+    @Override
+    public int size() {
+        return iSize;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (o == null || !(o instanceof Placement)) return -1;
+        Placement placement = (Placement) o;
+        if (!iLecture.equals(placement.variable())) return -1;
+        long value = encode(placement, false);
+        if (value < 0) return (placement.isMultiRoom() ? super.indexOf(o) : -1);
+        for (int i = 0; i < iSize; i++)
+            if (iValues[i] == value) return i;
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        if (o == null || !(o instanceof Placement)) return -1;
+        Placement placement = (Placement) o;
+        if (!iLecture.equals(placement.variable())) return -1;
+        long value = encode(placement, false);
+        if (value < 0) return (placement.isMultiRoom() ? super.lastIndexOf(o) : -1);
+        for (int i = iSize - 1; i >= 0; i--)
+            if (iValues[i] == value) return i;
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public Placement remove(int index) {
+        Placement placement = get(index);
+        System.arraycopy(iValues, index + 1, iValues, index, iSize - index - 1);
+        iSize--;
+        modCount++;
+        return placement;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) return false;
+        remove(index);
+        return true;
+    }
+
+    /** Cached placement together with its encoded value */
+    private static class Entry {
+        private final long iValue;
+        private final Placement iPlacement;
+
+        private Entry(long value, Placement placement) {
+            iValue = value;
+            iPlacement = placement;
+        }
+    }
+}
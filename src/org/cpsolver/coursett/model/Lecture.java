@@ -103,6 +103,10 @@ public class Lecture extends VariableWithContext<Lecture, Placement, Lecture.Lec
 
     public static boolean sSaveMemory = false;
     public static boolean sAllowBreakHard = false;
+    /** Keep cached domains in the compact form, see {@link CompactPlacementDomain} */
+    public static boolean sCompactDomain = false;
+    /** Number of materialized placements that are kept for each lecture when {@link Lecture#sCompactDomain} is set */
+    public static int sCompactDomainCacheSize = 64;
     private int iMaxRoomCombinations = -1;
 
     private Integer iCacheMinRoomSize = null;
@@ -505,7 +509,9 @@ public class Lecture extends VariableWithContext<Lecture, Placement, Lecture.Lec
                 setValues(values);
                 return values;
             } else if (isCacheDomain()) {
-                List<Placement> values = computeValues(null, sAllowBreakHard); 
+                List<Placement> values = computeValues(null, sAllowBreakHard);
+                if (sCompactDomain)
+                    values = new CompactPlacementDomain(this, values, sCompactDomainCacheSize);
                 setValues(values);
                 return values;
             } else {
@@ -1351,7 +1357,7 @@ public class Lecture extends VariableWithContext<Lecture, Placement, Lecture.Lec
                     i.remove();
             }
         }
-        setValues(newValues);
+        setValues(sCompactDomain ? new CompactPlacementDomain(this, newValues, sCompactDomainCacheSize) : newValues);
     }
 
     public void setCommitted(boolean committed) {
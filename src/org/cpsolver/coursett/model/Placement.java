@@ -1,7 +1,6 @@
 package org.cpsolver.coursett.model;
 
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.List;
 
 import org.cpsolver.coursett.Constants;
@@ -537,8 +536,7 @@ public class Placement extends Value<Lecture, Placement> {
                 for (RoomLocation roomLocation : getRoomLocations()) {
                     if (roomLocation.getRoomConstraint() != null && !roomLocation.getRoomConstraint().isAvailable(lecture, getTimeLocation(), lecture.getScheduler())) {
                         if (roomLocation.getRoomConstraint().getAvailableArray() != null) {
-                            for (Enumeration<Integer> e = getTimeLocation().getSlots(); e.hasMoreElements();) {
-                                int slot = e.nextElement();
+                            for (int slot: getTimeLocation().getSlotsArray()) {
                                 if (roomLocation.getRoomConstraint().getAvailableArray()[slot] != null) {
                                     for (Placement c : roomLocation.getRoomConstraint().getAvailableArray()[slot]) {
                                         if (c.getTimeLocation().hasIntersection(getTimeLocation()) && !lecture.canShareRoom(c.variable())) {
@@ -554,8 +552,7 @@ public class Placement extends Value<Lecture, Placement> {
             } else {
                 if (getRoomLocation().getRoomConstraint() != null && !getRoomLocation().getRoomConstraint().isAvailable(lecture, getTimeLocation(), lecture.getScheduler()))
                     if (getRoomLocation().getRoomConstraint().getAvailableArray() != null) {
-                        for (Enumeration<Integer> e = getTimeLocation().getSlots(); e.hasMoreElements();) {
-                            int slot = e.nextElement();
+                        for (int slot: getTimeLocation().getSlotsArray()) {
                             if (getRoomLocation().getRoomConstraint().getAvailableArray()[slot] != null) {
                                 for (Placement c : getRoomLocation().getRoomConstraint().getAvailableArray()[slot]) {
                                     if (c.getTimeLocation().hasIntersection(getTimeLocation()) && !lecture.canShareRoom(c.variable())) {
@@ -45,6 +45,8 @@ public class TimeLocation {
     private int iBreakTime;
 
     private BitSet iWeekCode;
+    private WeekCodeIndex iWeekCodeIndex = null;
+    private int iWeekCodeId = -1;
     private Long iDatePatternId = null;
     private String iDatePatternName = null;
     private int iDatePreference;
@@ -264,6 +266,8 @@ public class TimeLocation {
      * @return true if the date patterns overlap
      */
     public boolean shareWeeks(TimeLocation anotherLocation) {
+        if (iWeekCodeIndex != null && iWeekCodeIndex == anotherLocation.iWeekCodeIndex && iWeekCodeId >= 0 && anotherLocation.iWeekCodeId >= 0)
+            return iWeekCodeIndex.shareWeeks(this, anotherLocation);
         return iWeekCode.intersects(anotherLocation.iWeekCode);
     }
 
@@ -319,6 +323,42 @@ public class TimeLocation {
         return iDaysCache;
     }
 
+    private int[] iSlotsCache = null;
+    /** Used slots, allocation-free alternative to {@link TimeLocation#getSlots()}
+     * @return array of used slots (in the same order as returned by {@link TimeLocation#getSlots()}), the returned array is shared and must not be modified
+     **/
+    public int[] getSlotsArray() {
+        if (iSlotsCache == null) {
+            int[] slots = new int[getNrMeetings() * iLength];
+            int i = 0;
+            for (int day = 0; day < Constants.DAY_CODES.length; day++) {
+                if ((Constants.DAY_CODES[day] & iDayCode) == 0) continue;
+                int first = day * Constants.SLOTS_PER_DAY + iStartSlot;
+                for (int pos = 0; pos < iLength; pos++)
+                    slots[i++] = first + pos;
+            }
+            iSlotsCache = slots;
+        }
+        return iSlotsCache;
+    }
+
+    private int[] iStartSlotsCache = null;
+    /** Used start slots (for each meeting), allocation-free alternative to {@link TimeLocation#getStartSlots()}
+     * @return array of start slots for each meeting of the time, the returned array is shared and must not be modified
+     **/
+    public int[] getStartSlotsArray() {
+        if (iStartSlotsCache == null) {
+            int[] slots = new int[getNrMeetings()];
+            int i = 0;
+            for (int day = 0; day < Constants.DAY_CODES.length; day++) {
+                if ((Constants.DAY_CODES[day] & iDayCode) == 0) continue;
+                slots[i++] = day * Constants.SLOTS_PER_DAY + iStartSlot;
+            }
+            iStartSlotsCache = slots;
+        }
+        return iStartSlotsCache;
+    }
+
     /** Text representation 
      * @param useAmPm 12-hour format
      * @return time name (e.g., MWF 7:30a)
@@ -400,9 +440,35 @@ public class TimeLocation {
         iTimePatternId = timePatternId;
     }
 
+    /** Date pattern
+     * @return week code (binary string with 1 for each day when classes take place), it must not be modified
+     **/
     public BitSet getWeekCode() {
         return iWeekCode;
     }
+    
+    /** Dense id of the date pattern, see {@link WeekCodeIndex}
+     * @return week code id, -1 if the week code is not indexed
+     **/
+    public int getWeekCodeId() {
+        return iWeekCodeId;
+    }
+    
+    /** Index of date patterns this time location has been added into, see {@link WeekCodeIndex#index(TimeLocation)}
+     * @return week code index, null if the time location is not indexed
+     **/
+    public WeekCodeIndex getWeekCodeIndex() {
+        return iWeekCodeIndex;
+    }
+    
+    /** Set the index of date patterns, only to be called by {@link WeekCodeIndex#index(TimeLocation)}
+     * @param index week code index
+     * @param weekCodeId dense id of the date pattern in the index
+     **/
+    protected void setWeekCodeIndex(WeekCodeIndex index, int weekCodeId) {
+        iWeekCodeIndex = index;
+        iWeekCodeId = weekCodeId;
+    }
 
     public String getDatePatternName() {
         return iDatePatternName;
@@ -412,6 +478,8 @@ public class TimeLocation {
         iDatePatternId = datePatternId;
         iDatePatternName = datePatternName;
         iWeekCode = weekCode;
+        if (iWeekCodeIndex != null)
+            iWeekCodeId = iWeekCodeIndex.getId(iWeekCode);
     }
     
     public int getDatePatternPreference() {
@@ -100,6 +100,7 @@ public class TimetableModel extends ConstantModel<Lecture, Placement> {
     private HashSet<Student> iAllStudents = new HashSet<Student>();
     
     private DistanceMetric iDistanceMetric = null;
+    private WeekCodeIndex iWeekCodeIndex = new WeekCodeIndex();
     
     private StudentSectioning iStudentSectioning = null;
     private List<StudentGroup> iStudentGroups = new ArrayList<StudentGroup>();
@@ -172,6 +173,20 @@ public class TimetableModel extends ConstantModel<Lecture, Placement> {
         return iDistanceMetric;
     }
     
+    /** Index of date patterns of the time locations of the problem
+     * @return week code index of this model
+     **/
+    public WeekCodeIndex getWeekCodeIndex() {
+        return iWeekCodeIndex;
+    }
+    
+    @Override
+    public void addVariable(Lecture lecture) {
+        super.addVariable(lecture);
+        for (TimeLocation time: lecture.timeLocations())
+            iWeekCodeIndex.index(time);
+    }
+    
     public int getStudentWorkDayLimit() {
         return iStudentWorkDayLimit;
     }
@@ -415,14 +430,6 @@ public class TimetableModel extends ConstantModel<Lecture, Placement> {
         return iFlexibleConstraints;
     }
     
-    @Override
-    public double getTotalValue(Assignment<Lecture, Placement> assignment) {
-        double ret = 0;
-        for (Criterion<Lecture, Placement> criterion: getCriteria())
-            ret += criterion.getWeightedValue(assignment);
-        return ret;
-    }
-
     @Override
     public double getTotalValue(Assignment<Lecture, Placement> assignment, Collection<Lecture> variables) {
         double ret = 0;
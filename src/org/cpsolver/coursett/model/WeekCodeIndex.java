@@ -0,0 +1,116 @@
+package org.cpsolver.coursett.model;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Index of date patterns (week codes) of {@link TimeLocation}. <br>
+ * <br>
+ * Each model has its own index (see {@link TimetableModel#getWeekCodeIndex()}
+ * and {@link org.cpsolver.studentsct.StudentSectioningModel#getWeekCodeIndex()}),
+ * into which the time locations of the problem are added while the problem is
+ * being loaded. Each distinct week code is given a dense id. Whether two week
+ * codes overlap is then computed only once and kept in a lazily filled matrix,
+ * so that {@link TimeLocation#shareWeeks(TimeLocation)} and
+ * {@link TimeLocation#hasIntersection(TimeLocation)} become array lookups
+ * instead of {@link BitSet#intersects(BitSet)} calls. Real problems only have a
+ * few hundred distinct date patterns; the index is bounded by
+ * {@link WeekCodeIndex#MAX_SIZE} and week codes that do not fit are not indexed
+ * (they are compared using {@link BitSet#intersects(BitSet)} instead). Time
+ * locations that are not indexed (or that are indexed by a different index) are
+ * compared using {@link BitSet#intersects(BitSet)} as well.
+ *
+ * @version CourseTT 1.3 (University Course Timetabling)<br>
+ *          Copyright (C) 2006 - 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ */
+public class WeekCodeIndex {
+    private static Logger sLogger = Logger.getLogger(WeekCodeIndex.class);
+    /** Maximal number of distinct week codes that are indexed */
+    public static final int MAX_SIZE = 1024;
+    private static final byte UNKNOWN = 0, DISJOINT = 1, SHARED = 2;
+    private final Map<BitSet, Integer> iIds = new HashMap<BitSet, Integer>();
+    private final AtomicReferenceArray<byte[]> iShared = new AtomicReferenceArray<byte[]>(MAX_SIZE);
+    private boolean iFull = false;
+
+    /**
+     * Add the given time location into the index (if the index is not full). Time locations that
+     * are already indexed (by this or some other index) are ignored.
+     * @param time a time location
+     */
+    public void index(TimeLocation time) {
+        if (time != null && time.getWeekCodeIndex() == null)
+            time.setWeekCodeIndex(this, getId(time.getWeekCode()));
+    }
+
+    /**
+     * Dense id of the given week code
+     * @param weekCode date pattern
+     * @return id of the week code, -1 if the index is full (or the week code is null)
+     */
+    public synchronized int getId(BitSet weekCode) {
+        if (weekCode == null) return -1;
+        Integer id = iIds.get(weekCode);
+        if (id != null) return id;
+        if (iIds.size() >= MAX_SIZE) {
+            if (!iFull) {
+                sLogger.warn("Too many distinct date patterns (more than " + MAX_SIZE + "), date patterns that do not fit are not indexed.");
+                iFull = true;
+            }
+            return -1;
+        }
+        id = iIds.size();
+        BitSet copy = (BitSet) weekCode.clone();
+        iShared.set(id, new byte[MAX_SIZE]);
+        iIds.put(copy, id);
+        return id;
+    }
+
+    /**
+     * True if the week codes of the two time locations overlap. Both time locations must
+     * have been indexed by this index.
+     * @param t1 first time location
+     * @param t2 second time location
+     * @return true if the two date patterns have a day in common
+     */
+    public boolean shareWeeks(TimeLocation t1, TimeLocation t2) {
+        int id1 = t1.getWeekCodeId(), id2 = t2.getWeekCodeId();
+        byte[] row1 = iShared.get(id1), row2 = iShared.get(id2);
+        if (row1 == null || row2 == null)
+            return t1.getWeekCode().intersects(t2.getWeekCode());
+        byte shared = row1[id2];
+        if (shared == UNKNOWN) {
+            shared = (t1.getWeekCode().intersects(t2.getWeekCode()) ? SHARED : DISJOINT);
+            row1[id2] = shared;
+            row2[id1] = shared;
+        }
+        return shared == SHARED;
+    }
+
+    /**
+     * Number of indexed week codes
+     * @return number of distinct week codes that have been given an id
+     */
+    public synchronized int size() {
+        return iIds.size();
+    }
+}
@@ -44,8 +44,6 @@ public abstract class ExamCriterion extends AbstractCriterion<Exam, ExamPlacemen
         setValueUpdateType(ValueUpdateType.AfterUnassignedAfterAssigned);
     }
     
-    public void setWeight(double weight) { iWeight = weight; }
-    
     @Override
     public String getWeightName() {
         return "Exams." + getClass().getName().substring(1 + getClass().getName().lastIndexOf('.')) + "Weight";
@@ -2,15 +2,22 @@ package org.cpsolver.ifs.algorithms;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.log4j.Logger;
 import org.cpsolver.ifs.algorithms.neighbourhoods.HillClimberSelection;
 import org.cpsolver.ifs.algorithms.neighbourhoods.RandomMove;
 import org.cpsolver.ifs.algorithms.neighbourhoods.RandomSwapMove;
+import org.cpsolver.ifs.algorithms.neighbourhoods.ReadOnlyNeighbourSelection;
 import org.cpsolver.ifs.algorithms.neighbourhoods.SuggestionMove;
 import org.cpsolver.ifs.assignment.Assignment;
 import org.cpsolver.ifs.assignment.context.AssignmentContext;
@@ -36,6 +43,18 @@ import org.cpsolver.ifs.util.ToolBox;
  * It implements the {@link SolutionListener} and the variable neighbourhood selection.
  * 
  * <br>
+ * Optionally, the moves can be generated in batches (parameter BatchSize, prefixed
+ * by the {@link NeighbourSearch#getParameterBaseName()}): a batch of moves is
+ * generated, the values of the moves are computed in parallel (BatchThreads, defaults
+ * to the number of available processors), and the first accepted move in the order of
+ * generation (or the best accepted move if BatchBest is true) is returned. The current
+ * assignment does not change while the values are being computed. Only the moves of the
+ * neighbourhoods that implement {@link ReadOnlyNeighbourSelection} are evaluated in
+ * parallel, all the other moves (and the lazy moves) are evaluated by the search thread.
+ * The evaluation threads are provided by the solver (see {@link Solver#getEvaluationPool(int)})
+ * and they are released when the solver finishes.
+ * 
+ * <br>
  * 
  * @version IFS 1.3 (Iterative Forward Search)<br>
  *          Copyright (C) 2014 Tomas Muller<br>
@@ -70,6 +89,10 @@ public abstract class NeighbourSearch<V extends Variable<V, T>, T extends Value<
     private boolean iUpdatePoints = false;
     private double iTotalBonus;
     private Solver<V, T> iSolver = null;
+    private boolean iMetrics = false;
+    private int iBatchSize = 1;
+    private int iBatchThreads = 1;
+    private boolean iBatchBest = false;
 
     @SuppressWarnings("unchecked")
     public NeighbourSearch(DataProperties properties) {
@@ -77,6 +100,9 @@ public abstract class NeighbourSearch<V extends Variable<V, T>, T extends Value<
         iLog = Logger.getLogger(getClass());
         iRandomSelection = properties.getPropertyBoolean(getParameterBaseName() + ".Random", iRandomSelection);
         iUpdatePoints = properties.getPropertyBoolean(getParameterBaseName() + ".Update", iUpdatePoints);
+        iBatchSize = properties.getPropertyInt(getParameterBaseName() + ".BatchSize", iBatchSize);
+        iBatchThreads = properties.getPropertyInt(getParameterBaseName() + ".BatchThreads", Runtime.getRuntime().availableProcessors());
+        iBatchBest = properties.getPropertyBoolean(getParameterBaseName() + ".BatchBest", iBatchBest);
         String neighbours = properties.getProperty(getParameterBaseName() + ".Neighbours",
                 RandomMove.class.getName() + ";" + RandomSwapMove.class.getName() + "@0.01;" + SuggestionMove.class.getName() + "@0.01");
         neighbours += ";" + properties.getProperty(getParameterBaseName() + ".AdditionalNeighbours", "");
@@ -169,8 +195,10 @@ public abstract class NeighbourSearch<V extends Variable<V, T>, T extends Value<
         for (NeighbourSelection<V, T> neighbour: iNeighbours)
             neighbour.init(solver);
         iTotalBonus = 0;
+        iMetrics = (solver.getMetrics() != null);
         for (NeighbourSelector<V,T> s: iNeighbours) {
             s.init(solver);
+            s.setMetrics(solver.getMetrics(), getParameterBaseName());
             iTotalBonus += s.getBonus();
         }
     }
@@ -209,7 +237,10 @@ public abstract class NeighbourSearch<V extends Variable<V, T>, T extends Value<
      * @return generated neighbour
      */
     public Neighbour<V, T> generateMove(Solution<V, T> solution) {
-        return nextNeighbourSelection().selectNeighbour(solution);
+        NeighbourSelection<V,T> selection = nextNeighbourSelection();
+        if (iMetrics || iBatchSize > 1)
+            getContext(solution.getAssignment()).iSelector = (selection instanceof NeighbourSelector ? (NeighbourSelector<V,T>)selection : null);
+        return selection.selectNeighbour(solution);
     }
 
     @Override
@@ -218,6 +249,11 @@ public abstract class NeighbourSearch<V extends Variable<V, T>, T extends Value<
         context.activateIfNeeded(solution);
         while (context.canContinue(solution)) {
             if (iSolver != null && iSolver.isStop()) return null;
+            if (iBatchSize > 1) {
+                Neighbour<V,T> n = selectNeighbourFromBatch(context, solution);
+                if (n != null) return n;
+                continue;
+            }
             context.incIteration(solution);
             Neighbour<V,T> n = generateMove(solution);
             if (n != null && accept(context, solution, n))
@@ -227,6 +263,125 @@ public abstract class NeighbourSearch<V extends Variable<V, T>, T extends Value<
         return null;
     }
     
+    /**
+     * Generate a batch of moves, compute their values in parallel, and return the first
+     * accepted move (in the order of generation) or the best accepted move (when BatchBest is set).
+     * Each move of the batch that is considered counts as one iteration.
+     * @param context search context
+     * @param solution current solution
+     * @return accepted move, null if none of the moves of the batch was accepted
+     */
+    protected Neighbour<V, T> selectNeighbourFromBatch(NeighbourSearchContext context, Solution<V, T> solution) {
+        Assignment<V, T> assignment = solution.getAssignment();
+        if (context.iBatchAssignment != assignment) {
+            // make sure that all the assignment contexts exist, so that they are not created concurrently
+            solution.getModel().createAssignmentContexts(assignment, false);
+            context.iBatchAssignment = assignment;
+        }
+        List<Neighbour<V, T>> moves = new ArrayList<Neighbour<V, T>>(iBatchSize);
+        List<NeighbourSelector<V, T>> selectors = new ArrayList<NeighbourSelector<V, T>>(iBatchSize);
+        boolean[] readOnly = new boolean[iBatchSize];
+        for (int i = 0; i < iBatchSize; i++) {
+            moves.add(generateMove(solution));
+            selectors.add(context.iSelector);
+            readOnly[i] = (context.iSelector != null && context.iSelector.selection() instanceof ReadOnlyNeighbourSelection);
+        }
+        double[] values = evaluate(assignment, moves, readOnly);
+        int best = -1;
+        for (int i = 0; i < moves.size(); i++) {
+            if (i > 0 && (!context.canContinue(solution) || (iSolver != null && iSolver.isStop()))) break;
+            context.incIteration(solution);
+            Neighbour<V, T> n = moves.get(i);
+            if (n == null) continue;
+            if (n instanceof LazyNeighbour) {
+                if (best >= 0) continue;
+                ((LazyNeighbour<V, T>)n).setAcceptanceCriterion(this);
+                if (iMetrics) context.iSelector = selectors.get(i);
+                return n;
+            }
+            if (Double.isNaN(values[i])) continue;
+            if (context.accept(assignment, solution.getModel(), n, values[i], false)) {
+                if (best < 0 || values[i] < values[best]) best = i;
+                if (!iBatchBest) break;
+            }
+        }
+        if (best < 0) return null;
+        if (iMetrics && selectors.get(best) != null)
+            selectors.get(best).accepted(assignment, values[best]);
+        return moves.get(best);
+    }
+    
+    /**
+     * Compute values of the given moves. The read-only moves are evaluated in parallel using the
+     * evaluation threads of the solver (the current thread evaluates its share of them as well),
+     * the remaining moves are evaluated by the current thread afterwards.
+     * @param assignment current assignment
+     * @param moves generated moves
+     * @param readOnly true for the moves whose values can be computed in parallel (see {@link ReadOnlyNeighbourSelection})
+     * @return values of the given moves, NaN for null and lazy moves
+     */
+    protected double[] evaluate(final Assignment<V, T> assignment, final List<Neighbour<V, T>> moves, final boolean[] readOnly) {
+        final double[] values = new double[moves.size()];
+        int parallel = 0;
+        for (int i = 0; i < moves.size(); i++)
+            if (readOnly[i]) parallel++;
+        final int chunks = Math.max(1, Math.min(iBatchThreads, parallel));
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(chunks - 1);
+        ExecutorService pool = (chunks > 1 && iSolver != null ? iSolver.getEvaluationPool(iBatchThreads - 1) : null);
+        if (pool != null) {
+            try {
+                for (int c = 1; c < chunks; c++) {
+                    final int chunk = c;
+                    futures.add(pool.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            evaluate(assignment, moves, readOnly, values, chunk, chunks);
+                            return null;
+                        }
+                    }));
+                }
+            } catch (RejectedExecutionException e) {
+                // the solver is finishing, evaluate the remaining chunks in this thread
+                for (int c = 1 + futures.size(); c < chunks; c++)
+                    evaluate(assignment, moves, readOnly, values, c, chunks);
+            }
+            evaluate(assignment, moves, readOnly, values, 0, chunks);
+        } else {
+            evaluate(assignment, moves, readOnly, values, 0, 1);
+        }
+        for (Future<Object> future: futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<Object> f: futures) f.cancel(true);
+                Arrays.fill(values, Double.NaN);
+                return values;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+                if (e.getCause() instanceof Error) throw (Error)e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        for (int i = 0; i < moves.size(); i++) {
+            if (readOnly[i]) continue;
+            Neighbour<V, T> n = moves.get(i);
+            values[i] = (n == null || n instanceof LazyNeighbour ? Double.NaN : n.value(assignment));
+        }
+        return values;
+    }
+    
+    /** Compute values of every step-th read-only move, starting with the given one */
+    private void evaluate(Assignment<V, T> assignment, List<Neighbour<V, T>> moves, boolean[] readOnly, double[] values, int first, int step) {
+        int index = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            if (!readOnly[i]) continue;
+            if (index++ % step != first) continue;
+            Neighbour<V, T> n = moves.get(i);
+            values[i] = (n == null || n instanceof LazyNeighbour ? Double.NaN : n.value(assignment));
+        }
+    }
+    
     /**
      * True if the generated move is to be accepted.
      * @param context search context
@@ -239,13 +394,25 @@ public abstract class NeighbourSearch<V extends Variable<V, T>, T extends Value<
             ((LazyNeighbour<V, T>)neighbour).setAcceptanceCriterion(this);
             return true;
         }
-        return context.accept(solution.getAssignment(), solution.getModel(), neighbour, neighbour.value(solution.getAssignment()), false);
+        double value = neighbour.value(solution.getAssignment());
+        if (context.accept(solution.getAssignment(), solution.getModel(), neighbour, value, false)) {
+            if (iMetrics && context.iSelector != null)
+                context.iSelector.accepted(solution.getAssignment(), value);
+            return true;
+        }
+        return false;
     }
     
     /** Accept lazy neighbour -- calling the acceptance criterion with lazy = true. */
     @Override
     public boolean accept(Assignment<V, T> assignment, LazyNeighbour<V, T> neighbour, double value) {
-        return getContext(assignment).accept(assignment, neighbour.getModel(), neighbour, value, true);
+        NeighbourSearchContext context = getContext(assignment);
+        if (context.accept(assignment, neighbour.getModel(), neighbour, value, true)) {
+            if (iMetrics && context.iSelector != null)
+                context.iSelector.accepted(assignment, value);
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -299,6 +466,8 @@ public abstract class NeighbourSearch<V extends Variable<V, T>, T extends Value<
     public abstract class NeighbourSearchContext implements AssignmentContext, SolutionListener<V, T> {
         protected long iT0 = -1;
         protected int iIter = 0;
+        private NeighbourSelector<V,T> iSelector = null;
+        private Assignment<V, T> iBatchAssignment = null;
 
         /** Called just before the neighbourhood search is called for the first time. 
          * @param solution current solution
@@ -9,6 +9,7 @@ import org.cpsolver.ifs.model.Value;
 import org.cpsolver.ifs.model.Variable;
 import org.cpsolver.ifs.solution.Solution;
 import org.cpsolver.ifs.solver.Solver;
+import org.cpsolver.ifs.solver.SolverMetrics;
 
 
 /**
@@ -47,6 +48,9 @@ public class NeighbourSelector<V extends Variable<V, T>, T extends Value<V, T>>
     private double iBonus = 1.0;
     private double iPoints = 0;
     private long iTime = 0;
+    private SolverMetrics iMetrics = null;
+    private String iSearch = null;
+    private volatile SolverMetrics.NeighbourMetrics[] iThreadMetrics = null;
     
     /**
      * Constructor 
@@ -73,7 +77,15 @@ public class NeighbourSelector<V extends Variable<V, T>, T extends Value<V, T>>
      */
     @Override
     public Neighbour<V,T> selectNeighbour(Solution<V,T> solution) {
-        if (iUpdate) {
+        if (iMetrics != null) {
+            SolverMetrics.NeighbourMetrics metrics = getMetrics(solution.getAssignment());
+            long t0 = System.nanoTime();
+            Neighbour<V,T> n = iSelection.selectNeighbour(solution);
+            long t1 = System.nanoTime();
+            metrics.selected(n == null, t1 - t0);
+            if (iUpdate) update(solution.getAssignment(), n, (t1 - t0) / 1000000);
+            return n;
+        } else if (iUpdate) {
             long t0 = System.currentTimeMillis();
             Neighbour<V,T> n = iSelection.selectNeighbour(solution);
             long t1 = System.currentTimeMillis();
@@ -109,6 +121,54 @@ public class NeighbourSelector<V extends Variable<V, T>, T extends Value<V, T>>
         }
     }
     
+    /**
+     * Enable telemetry of this selector (see {@link SolverMetrics})
+     * @param metrics solver metrics, null to disable
+     * @param search name of the neighbour search using this selector
+     */
+    public void setMetrics(SolverMetrics metrics, String search) {
+        iMetrics = metrics;
+        iSearch = search;
+        iThreadMetrics = (metrics == null ? null : new SolverMetrics.NeighbourMetrics[0]);
+    }
+    
+    /**
+     * Metrics of this selector for the solver thread of the given assignment
+     * @param a current assignment
+     * @return counters, null when the metrics are not enabled
+     */
+    public SolverMetrics.NeighbourMetrics getMetrics(Assignment<V, T> a) {
+        SolverMetrics.NeighbourMetrics[] metrics = iThreadMetrics;
+        if (metrics == null) return null;
+        int index = Math.max(0, a.getIndex());
+        if (index < metrics.length && metrics[index] != null) return metrics[index];
+        return createMetrics(index);
+    }
+    
+    private synchronized SolverMetrics.NeighbourMetrics createMetrics(int index) {
+        SolverMetrics.NeighbourMetrics[] metrics = iThreadMetrics;
+        if (index >= metrics.length) {
+            SolverMetrics.NeighbourMetrics[] extended = new SolverMetrics.NeighbourMetrics[index + 1];
+            System.arraycopy(metrics, 0, extended, 0, metrics.length);
+            metrics = extended;
+        }
+        if (metrics[index] == null) {
+            metrics[index] = iMetrics.createNeighbourMetrics(iSearch, iSelection.getClass().getSimpleName(), index);
+            iThreadMetrics = metrics;
+        }
+        return metrics[index];
+    }
+    
+    /**
+     * A neighbour generated by this selector has been accepted (only counted when the metrics are enabled)
+     * @param a current assignment
+     * @param value value of the accepted neighbour
+     */
+    public void accepted(Assignment<V, T> a, double value) {
+        SolverMetrics.NeighbourMetrics metrics = getMetrics(a);
+        if (metrics != null) metrics.accepted(value);
+    }
+    
     /** Weight of the selector in the roulette wheel selection of neighbour selectors 
      * @return weight of this selector
      **/
@@ -1,6 +1,7 @@
 package org.cpsolver.ifs.algorithms;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -107,12 +108,12 @@ public class ParallelConstruction<V extends Variable<V, T>, T extends Value<V, T
             } else if (solution.getAssignment().nrAssignedVariables() < iBestAssigned && context.inc() >= iMaxIdle) {
                 Model<V, T> model = solution.getModel();
                 Assignment<V, T> assignment = solution.getAssignment();
-                int idx = ToolBox.random(model.countVariables());
-                for (int i = 0; i < model.countVariables(); i++) {
-                    V variable = model.variables().get((i + idx) % model.countVariables());
-                    T value = assignment.getValue(variable);
+                List<V> unassigned = assignment.unassignedVariablesView(model);
+                int idx = ToolBox.random(unassigned.size());
+                for (int i = 0; i < unassigned.size(); i++) {
+                    V variable = unassigned.get((i + idx) % unassigned.size());
                     T best = variable.getBestAssignment();
-                    if (value == null && best != null)
+                    if (best != null)
                         return new SimpleNeighbour<V, T>(variable, best, model.conflictValues(solution.getAssignment(), best));
                 }
             }
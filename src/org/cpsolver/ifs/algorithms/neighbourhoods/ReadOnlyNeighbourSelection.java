@@ -0,0 +1,35 @@
+package org.cpsolver.ifs.algorithms.neighbourhoods;
+
+import org.cpsolver.ifs.heuristics.NeighbourSelection;
+
+/**
+ * This interface may be implemented by a {@link NeighbourSelection} to indicate that the
+ * {@link org.cpsolver.ifs.model.Neighbour#value(org.cpsolver.ifs.assignment.Assignment)} of the
+ * neighbours it returns only reads the assignment (and the model), so that the values of several
+ * neighbours can be computed in parallel. Only the neighbours of such selections are evaluated in
+ * parallel when the moves are generated in batches (see the BatchSize parameter of
+ * {@link org.cpsolver.ifs.algorithms.NeighbourSearch}), the values of all the other neighbours are
+ * computed by the search thread.
+ * <br>
+ * 
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ **/
+public interface ReadOnlyNeighbourSelection {
+}
@@ -1,6 +1,7 @@
 package org.cpsolver.ifs.assignment;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.cpsolver.ifs.assignment.context.AssignmentContext;
 import org.cpsolver.ifs.assignment.context.AssignmentContextReference;
@@ -128,6 +129,39 @@ public interface Assignment<V extends Variable<V, T>, T extends Value<V, T>> {
      **/
     public Collection<V> unassignedVariables(Model<V, T> model);
 
+    /**
+     * The list of variables of the model that have no value in this assignment, backed by an index that is kept up to date
+     * as the variables are being assigned and unassigned. Unlike {@link Assignment#unassignedVariables(Model)}, no copy is made:
+     * the size and a random access by position are O(1), but the list must not be modified and it cannot be iterated
+     * while the assignment is being changed.
+     * @param model existing model (the assignment does not keep track about all existing variables, that is what the {@link Model#variables()} is for)
+     * @return a read-only random access list of all not assigned variables in this assignment
+     **/
+    public List<V> unassignedVariablesView(Model<V, T> model);
+
+    /**
+     * Create a savepoint. All changes of the assignment that are made after a savepoint is created are recorded in a change log,
+     * so that they can be rolled back using {@link Assignment#rollback(int)}. Each savepoint needs to be released using
+     * {@link Assignment#release(int)}; the change log is cleared when there is no savepoint left.
+     * @return savepoint, i.e., the current position in the change log
+     **/
+    public int savepoint();
+    
+    /**
+     * Roll back all the changes made after the given savepoint, in the reverse order. The changes are undone using
+     * {@link Assignment#assign(long, Value)} and {@link Assignment#unassign(long, Variable)}, restoring the previous iterations,
+     * so that all the constraints, criteria, and their assignment contexts are updated accordingly.
+     * The savepoint remains active (it still needs to be released).
+     * @param savepoint a savepoint returned by {@link Assignment#savepoint()}
+     **/
+    public void rollback(int savepoint);
+    
+    /**
+     * Release a savepoint. The changes made after the savepoint are kept.
+     * @param savepoint a savepoint returned by {@link Assignment#savepoint()}
+     **/
+    public void release(int savepoint);
+
     /**
      * Assignment context for a reference. This can be used to keep assignment dependent computations (e.g., see {@link ConstraintWithContext}).
      * @param reference a reference (which can be stored within the model, e.g., as an instance variable of a constraint)
@@ -1,8 +1,11 @@
 package org.cpsolver.ifs.assignment;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.RandomAccess;
 
 import org.cpsolver.ifs.assignment.context.AssignmentContext;
 import org.cpsolver.ifs.assignment.context.AssignmentContextHolder;
@@ -48,6 +51,11 @@ import org.cpsolver.ifs.model.Variable;
 public abstract class AssignmentAbstract<V extends Variable<V, T>, T extends Value<V, T>> implements Assignment<V, T> {
     protected AssignmentContextHolder<V, T> iContexts;
     protected boolean iHasInitialzedContext = false;
+    private UnassignedVariables iUnassigned = null;
+    private int iNrSavepoints = 0, iLogSize = 0;
+    private Object[] iLogVariables = null, iLogValues = null;
+    private long[] iLogIterations = null;
+    private boolean iRollingBack = false;
     
     /**
      * Constructor
@@ -105,10 +113,16 @@ public abstract class AssignmentAbstract<V extends Variable<V, T>, T extends Val
         
         // unassign old value, if assigned
         T old = getValueInternal(variable);
+        
+        // record the change when there is a savepoint
+        if (iNrSavepoints > 0 && !iRollingBack && (old != null || value != null))
+            log(variable, old, getIteration(variable));
         if (old != null) {
             if (model != null)
                 model.beforeUnassigned(this, iteration, old);
             setValueInternal(iteration, variable, null);
+            if (iUnassigned != null)
+                iUnassigned.variableUnassigned(variable);
             for (Constraint<V, T> constraint : variable.constraints())
                 constraint.unassigned(this, iteration, old);
             if (model != null)
@@ -124,6 +138,8 @@ public abstract class AssignmentAbstract<V extends Variable<V, T>, T extends Val
             if (model != null)
                 model.beforeAssigned(this, iteration, value);
             setValueInternal(iteration, variable, value);
+            if (iUnassigned != null)
+                iUnassigned.variableAssigned(variable);
             for (Constraint<V, T> constraint : variable.constraints())
                 constraint.assigned(this, iteration, value);
             if (model != null)
@@ -148,6 +164,59 @@ public abstract class AssignmentAbstract<V extends Variable<V, T>, T extends Val
         return assign(iteration, variable, null);
     }
     
+    @Override
+    public int savepoint() {
+        iNrSavepoints ++;
+        return iLogSize;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public void rollback(int savepoint) {
+        iRollingBack = true;
+        try {
+            while (iLogSize > savepoint) {
+                iLogSize --;
+                V variable = (V) iLogVariables[iLogSize];
+                T value = (T) iLogValues[iLogSize];
+                iLogVariables[iLogSize] = null; iLogValues[iLogSize] = null;
+                assign(iLogIterations[iLogSize], variable, value);
+            }
+        } finally {
+            iRollingBack = false;
+        }
+    }
+    
+    @Override
+    public void release(int savepoint) {
+        if (iNrSavepoints > 0) iNrSavepoints --;
+        if (iNrSavepoints == 0 && iLogSize > 0) {
+            Arrays.fill(iLogVariables, 0, iLogSize, null);
+            Arrays.fill(iLogValues, 0, iLogSize, null);
+            iLogSize = 0;
+        }
+    }
+    
+    /**
+     * Record a change in the change log (see {@link Assignment#savepoint()})
+     * @param variable a variable that is being changed
+     * @param old its previous value
+     * @param iteration its previous iteration
+     */
+    protected void log(V variable, T old, long iteration) {
+        if (iLogVariables == null) {
+            iLogVariables = new Object[16]; iLogValues = new Object[16]; iLogIterations = new long[16];
+        } else if (iLogSize == iLogVariables.length) {
+            iLogVariables = Arrays.copyOf(iLogVariables, 2 * iLogSize);
+            iLogValues = Arrays.copyOf(iLogValues, 2 * iLogSize);
+            iLogIterations = Arrays.copyOf(iLogIterations, 2 * iLogSize);
+        }
+        iLogVariables[iLogSize] = variable;
+        iLogValues[iLogSize] = old;
+        iLogIterations[iLogSize] = iteration;
+        iLogSize ++;
+    }
+    
     @Override
     public int nrAssignedVariables() {
         return assignedVariables().size();
@@ -163,17 +232,57 @@ public abstract class AssignmentAbstract<V extends Variable<V, T>, T extends Val
 
     @Override
     public Collection<V> unassignedVariables(Model<V, T> model) {
-        List<V> unassigned = new ArrayList<V>();
+        UnassignedVariables unassigned = getUnassignedVariables(model);
+        if (unassigned != null)
+            return new ArrayList<V>(unassigned);
+        List<V> ret = new ArrayList<V>();
         for (V variable: model.variables())
             if (getValue(variable) == null)
-                unassigned.add(variable);
-        return unassigned;
+                ret.add(variable);
+        return ret;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<V> unassignedVariablesView(Model<V, T> model) {
+        UnassignedVariables unassigned = getUnassignedVariables(model);
+        if (unassigned != null)
+            return unassigned;
+        Collection<V> variables = unassignedVariables(model);
+        return (variables instanceof List<?> ? (List<V>)variables : new ArrayList<V>(variables));
     }
 
     @Override
     public int nrUnassignedVariables(Model<V, T> model) {
+        UnassignedVariables unassigned = iUnassigned;
+        if (unassigned != null && unassigned.isValid(model))
+            return unassigned.size();
         return model.variables().size() - nrAssignedVariables();
     }
+    
+    /**
+     * Can the unassigned variables be indexed, i.e., are all the changes of the assignment done via {@link AssignmentAbstract#assign(long, Variable, Value)}?
+     * This is not the case for an assignment whose values can change underneath it (e.g., an assignment that is reading its values from another assignment).
+     * @return true if the unassigned variables can be kept in an index, defaults to true
+     */
+    protected boolean canIndexUnassignedVariables() {
+        return true;
+    }
+    
+    /**
+     * Returns the index of the unassigned variables, creating a new one if there is none yet or if the variables of the model have changed.
+     * @param model existing model
+     * @return unassigned variables index, null if not supported (see {@link AssignmentAbstract#canIndexUnassignedVariables()})
+     */
+    protected UnassignedVariables getUnassignedVariables(Model<V, T> model) {
+        if (!canIndexUnassignedVariables()) return null;
+        UnassignedVariables unassigned = iUnassigned;
+        if (unassigned == null || !unassigned.isValid(model)) {
+            unassigned = new UnassignedVariables(model);
+            iUnassigned = unassigned;
+        }
+        return unassigned;
+    }
 
     @Override
     public <C extends AssignmentContext> C getAssignmentContext(AssignmentContextReference<V, T, C> reference) {
@@ -211,4 +320,101 @@ public abstract class AssignmentAbstract<V extends Variable<V, T>, T extends Val
             if (constraint instanceof HasAssignmentContext)
                 iContexts.getAssignmentContext(this, ((HasAssignmentContext<V, T, ?>)constraint).getAssignmentContextReference());
     }
+    
+    /**
+     * Index of the variables of a model that are not assigned in this assignment. The variables are kept in a dense array
+     * (a removed variable is replaced by the last one), together with their positions indexed by {@link Variable#getIndex()}.
+     * The index is valid as long as no variable is added to or removed from the model.
+     */
+    protected class UnassignedVariables extends AbstractList<V> implements RandomAccess {
+        private Model<V, T> iModel;
+        private int iNrVariables, iLastIndex;
+        private Object[] iVariables;
+        private int[] iPosition;
+        private int iSize = 0;
+        
+        /**
+         * Create index of unassigned variables of the given model
+         * @param model existing model
+         */
+        public UnassignedVariables(Model<V, T> model) {
+            iModel = model;
+            List<V> variables = model.variables();
+            iNrVariables = variables.size();
+            iLastIndex = (iNrVariables == 0 ? -1 : variables.get(iNrVariables - 1).getIndex());
+            int maxIndex = -1;
+            for (V variable: variables)
+                if (variable.getIndex() > maxIndex) maxIndex = variable.getIndex();
+            iVariables = new Object[iNrVariables];
+            iPosition = new int[maxIndex + 1];
+            for (V variable: variables)
+                if (getValue(variable) == null) {
+                    iVariables[iSize++] = variable;
+                    iPosition[variable.getIndex()] = iSize;
+                }
+        }
+        
+        /**
+         * Check whether the index still matches the variables of the model. A newly added variable is always placed at
+         * the end of {@link Model#variables()} and it gets a higher index than any other variable.
+         * @param model existing model
+         * @return true if the index can be used
+         */
+        public boolean isValid(Model<V, T> model) {
+            if (iModel != model) return false;
+            List<V> variables = model.variables();
+            if (variables.size() != iNrVariables) return false;
+            return iNrVariables == 0 || variables.get(iNrVariables - 1).getIndex() == iLastIndex;
+        }
+        
+        /**
+         * Variable has been unassigned
+         * @param variable a variable
+         */
+        protected void variableUnassigned(V variable) {
+            int idx = variable.getIndex();
+            if (idx < 0 || idx >= iPosition.length || iPosition[idx] > 0 || iSize == iVariables.length) return;
+            iVariables[iSize++] = variable;
+            iPosition[idx] = iSize;
+            modCount++;
+        }
+        
+        /**
+         * Variable has been assigned
+         * @param variable a variable
+         */
+        protected void variableAssigned(V variable) {
+            int idx = variable.getIndex();
+            if (idx < 0 || idx >= iPosition.length || iPosition[idx] == 0) return;
+            int pos = iPosition[idx] - 1;
+            iSize--;
+            if (pos < iSize) {
+                Object last = iVariables[iSize];
+                iVariables[pos] = last;
+                iPosition[((Variable<?, ?>)last).getIndex()] = pos + 1;
+            }
+            iVariables[iSize] = null;
+            iPosition[idx] = 0;
+            modCount++;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(int index) {
+            if (index < 0 || index >= iSize) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + iSize);
+            return (V) iVariables[index];
+        }
+
+        @Override
+        public int size() {
+            return iSize;
+        }
+        
+        @Override
+        public boolean contains(Object o) {
+            if (o == null || !(o instanceof Variable)) return false;
+            int idx = ((Variable<?, ?>)o).getIndex();
+            return idx >= 0 && idx < iPosition.length && iPosition[idx] > 0 && iVariables[iPosition[idx] - 1] == o;
+        }
+    }
 }
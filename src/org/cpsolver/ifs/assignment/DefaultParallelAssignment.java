@@ -1,8 +1,11 @@
 package org.cpsolver.ifs.assignment;
 
+import java.util.AbstractCollection;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.concurrent.locks.Lock;
 
 import org.cpsolver.ifs.assignment.context.AssignmentContextHolder;
@@ -20,6 +23,10 @@ import org.cpsolver.ifs.solver.ParallelSolver;
  * Each extra contains an array of values, indexed by {@link Assignment#getIndex()}.
  * Useful for a small, fixed number of assignments. Used by the {@link ParallelSolver},
  * where there is one assignment for each thread. 
+ * <br><br>
+ * Assignment iterations and the set of assigned variables are kept in primitive arrays
+ * indexed by {@link Variable#getIndex()}, so that no objects are created during
+ * an assignment or an unassignment. 
  * 
  * @see Assignment
  * @see ParallelSolver
@@ -45,7 +52,12 @@ import org.cpsolver.ifs.solver.ParallelSolver;
  * @param <T> Value
  **/
 public class DefaultParallelAssignment <V extends Variable<V, T>, T extends Value<V, T>> extends AssignmentAbstract<V, T> {
-    private Map<V, Long> iAssignedVariables = new HashMap<V, Long>();
+    private long[] iIteration = new long[0];
+    private int[] iPosition = new int[0];
+    private Object[] iAssigned = new Object[0];
+    private int iNrAssigned = 0;
+    private int iModCount = 0;
+    private Collection<V> iAssignedVariables = new AssignedVariables();
     private int iIndex;
 
     public DefaultParallelAssignment(int threadIndex) {
@@ -78,13 +90,18 @@ public class DefaultParallelAssignment <V extends Variable<V, T>, T extends Valu
 
     @Override
     public long getIteration(V variable) {
-        Long it = iAssignedVariables.get(variable);
-        return (it == null ? 0 : it.longValue());
+        int idx = variable.getIndex();
+        return (idx < iIteration.length ? iIteration[idx] : 0);
     }
 
     @Override
     public Collection<V> assignedVariables() {
-        return iAssignedVariables.keySet();
+        return iAssignedVariables;
+    }
+    
+    @Override
+    public int nrAssignedVariables() {
+        return iNrAssigned;
     }
     
     @Override
@@ -97,14 +114,86 @@ public class DefaultParallelAssignment <V extends Variable<V, T>, T extends Valu
     @SuppressWarnings("deprecation")
     protected void setValueInternal(long iteration, V variable, T value) {
         variable.getAssignments()[iIndex] = value;
-        if (value == null)
-            iAssignedVariables.remove(variable);
-        else
-            iAssignedVariables.put(variable, iteration);
+        int idx = variable.getIndex();
+        if (value == null) {
+            if (idx >= iPosition.length || iPosition[idx] == 0) return;
+            // swap the last assigned variable into the freed position
+            int pos = iPosition[idx] - 1;
+            iNrAssigned --;
+            if (pos < iNrAssigned) {
+                Object last = iAssigned[iNrAssigned];
+                iAssigned[pos] = last;
+                iPosition[((Variable<?, ?>)last).getIndex()] = pos + 1;
+            }
+            iAssigned[iNrAssigned] = null;
+            iPosition[idx] = 0;
+            iIteration[idx] = 0;
+            iModCount ++;
+        } else {
+            if (idx >= iPosition.length) {
+                int size = Math.max(idx + 1, 2 * iPosition.length);
+                iPosition = Arrays.copyOf(iPosition, size);
+                iIteration = Arrays.copyOf(iIteration, size);
+            }
+            if (iPosition[idx] == 0) {
+                if (iNrAssigned == iAssigned.length)
+                    iAssigned = Arrays.copyOf(iAssigned, Math.max(16, 2 * iAssigned.length));
+                iAssigned[iNrAssigned++] = variable;
+                iPosition[idx] = iNrAssigned;
+                iModCount ++;
+            }
+            iIteration[idx] = iteration;
+        }
     }
 
     @Override
     public int getIndex() {
         return iIndex;
     }
+    
+    /**
+     * Live view of the assigned variables, backed by the dense array of assigned variables.
+     * Size and contains are O(1). The iterator is fail-fast: it throws {@link ConcurrentModificationException}
+     * when a variable is assigned or unassigned during the iteration (iterate over a copy instead).
+     */
+    private class AssignedVariables extends AbstractCollection<V> {
+        @Override
+        public int size() {
+            return iNrAssigned;
+        }
+        
+        @Override
+        public boolean contains(Object o) {
+            if (o == null || !(o instanceof Variable)) return false;
+            int idx = ((Variable<?, ?>)o).getIndex();
+            if (idx < 0 || idx >= iPosition.length || iPosition[idx] == 0) return false;
+            return iAssigned[iPosition[idx] - 1] == o;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new Iterator<V>() {
+                private int iNext = 0;
+                private int iExpectedModCount = iModCount;
+
+                @Override
+                public boolean hasNext() {
+                    return iNext < iNrAssigned;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public V next() {
+                    if (iModCount != iExpectedModCount) throw new ConcurrentModificationException();
+                    if (iNext >= iNrAssigned) throw new NoSuchElementException();
+                    return (V) iAssigned[iNext++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Assigned variables cannot be removed this way.");
+                }
+            };
+        }
+    }
 }
@@ -104,6 +104,14 @@ public class OptimisticInheritedAssignment<V extends Variable<V, T>, T extends V
         }
     }    
     
+    /**
+     * Values that have not been changed are read from the parent assignment, which can change in the mean time.
+     */
+    @Override
+    protected boolean canIndexUnassignedVariables() {
+        return false;
+    }
+    
     @Override
     public Assignment<V, T> getParentAssignment() {
         return iParent;
@@ -35,30 +35,56 @@ import org.cpsolver.ifs.model.Variable;
  * @param <T> Value
  **/
 public class AssignmentContextHolderArray<V extends Variable<V, T>, T extends Value<V, T>> implements AssignmentContextHolder<V, T> {
-    private AssignmentContext[] iContexts = new AssignmentContext[1000];
+    private AssignmentContext[] iContexts;
 
     public AssignmentContextHolderArray() {
+        this(1000);
+    }
+    
+    /**
+     * Create a holder with the given initial size of the array (it is extended when needed)
+     * @param initialSize initial number of contexts that can be stored without extending the array
+     */
+    public AssignmentContextHolderArray(int initialSize) {
+        iContexts = new AssignmentContext[initialSize];
     }
     
     @Override
     @SuppressWarnings("unchecked")
     public <U extends AssignmentContext> U getAssignmentContext(Assignment<V, T> assignment, AssignmentContextReference<V, T, U> reference) {
-        try {
-            AssignmentContext context = iContexts[reference.getIndex()];
-            if (context != null) return (U) context;
-        } catch (ArrayIndexOutOfBoundsException e) {}
+        U context = (U) getContext(reference.getIndex());
+        if (context != null) return context;
 
-        U context = reference.getParent().createAssignmentContext(assignment);
-        if (iContexts.length <= reference.getIndex())
-            iContexts = Arrays.copyOf(iContexts, reference.getIndex() + 1000);
-        iContexts[reference.getIndex()] = context;
+        context = reference.getParent().createAssignmentContext(assignment);
+        setContext(reference.getIndex(), context);
         return context;
     }
     
     @Override
     public <C extends AssignmentContext> void clearContext(AssignmentContextReference<V, T, C> reference) {
-        try {
-            iContexts[reference.getIndex()] = null;
-        } catch (ArrayIndexOutOfBoundsException e) {}
+        setContext(reference.getIndex(), null);
+    }
+    
+    /**
+     * Context stored on the given index
+     * @param index reference index (see {@link AssignmentContextReference#getIndex()})
+     * @return stored context, null if there is none
+     */
+    protected AssignmentContext getContext(int index) {
+        AssignmentContext[] contexts = iContexts;
+        return (index < contexts.length ? contexts[index] : null);
+    }
+    
+    /**
+     * Store a context on the given index, extending the array if needed
+     * @param index reference index (see {@link AssignmentContextReference#getIndex()})
+     * @param context context to store, null to clear the context
+     */
+    protected void setContext(int index, AssignmentContext context) {
+        if (iContexts.length <= index) {
+            if (context == null) return;
+            iContexts = Arrays.copyOf(iContexts, index + 1000);
+        }
+        iContexts[index] = context;
     }
-}
\ No newline at end of file
+}
@@ -9,7 +9,8 @@ import org.cpsolver.ifs.model.Variable;
 /**
  * A simple assignment context holder implementation used by the {@link DefaultParallelAssignment} class.
  * {@link CanHoldContext} are used when possible, storing contexts in arrays, on the
- * {@link DefaultParallelAssignment#getIndex()} position.
+ * {@link DefaultParallelAssignment#getIndex()} position. Other contexts are stored in an array
+ * indexed by {@link AssignmentContextReference#getIndex()} (see {@link AssignmentContextHolderArray}).
  * 
  * @see AssignmentContext
  * @see AssignmentContextReference
@@ -35,10 +36,11 @@ import org.cpsolver.ifs.model.Variable;
  * @param <V> Variable
  * @param <T> Value
  **/
-public class DefaultParallelAssignmentContextHolder<V extends Variable<V, T>, T extends Value<V, T>> extends AssignmentContextHolderMap<V, T> {
+public class DefaultParallelAssignmentContextHolder<V extends Variable<V, T>, T extends Value<V, T>> extends AssignmentContextHolderArray<V, T> {
     protected int iIndex = -1;
 
     public DefaultParallelAssignmentContextHolder(int threadIndex) {
+        super(0);
         iIndex = threadIndex;
     }
     
@@ -77,7 +77,7 @@ public class InheritedAssignmentContextHolder<V extends Variable<V, T>, T extend
             
             return context.getContent();
         } else {
-            U context = (U) iContexts.get(reference.getIndex());
+            U context = (U) getContext(reference.getIndex());
             if (context != null) return context;
             
             if (reference.getParent() instanceof CanInheritContext)
@@ -85,7 +85,7 @@ public class InheritedAssignmentContextHolder<V extends Variable<V, T>, T extend
                         ((InheritedAssignment<V, T>)assignment).getParentAssignment().getAssignmentContext(reference));
             else
                 context = reference.getParent().createAssignmentContext(assignment);
-            iContexts.put(reference.getIndex(), context);
+            setContext(reference.getIndex(), context);
             
             return context;
         }
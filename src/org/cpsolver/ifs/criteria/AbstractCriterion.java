@@ -65,6 +65,7 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
     private AssignmentContextReference<V, T, ValueContext> iContextReference = null;
     private AssignmentContext[] iContext = new AssignmentContext[CanHoldContext.sMaxSize];
     private int iLastCacheId = 0;
+    private Boolean iValueIncremental = null;
 
     
     /**
@@ -108,7 +109,7 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
     
     @Override
     public void configure(DataProperties properties) {
-        iWeight = properties.getPropertyDouble(getWeightName(), getWeightDefault(properties));
+        setWeight(properties.getPropertyDouble(getWeightName(), getWeightDefault(properties)));
         iDebug = properties.getPropertyBoolean("Debug." + getClass().getName().substring(1 + getClass().getName().lastIndexOf('.')), properties.getPropertyBoolean("Debug.Criterion", false));
     }
 
@@ -118,6 +119,15 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
         return true;
     }
     
+    /**
+     * Debug mode, enabled by Debug.<i>CriterionName</i> or Debug.Criterion parameters.
+     * Incrementally maintained values are checked against a full recomputation in this mode.
+     * @return true if the criterion is being debugged
+     */
+    public boolean isDebug() {
+        return iDebug;
+    }
+    
     /**
      * Returns current model
      * @return problem model
@@ -181,6 +191,64 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
         return iWeight;
     }
     
+    /**
+     * Change the weight of this criterion. The running total of the model is recomputed (see {@link Model#invalidateTotalValue()}).
+     * @param weight new weight
+     */
+    public void setWeight(double weight) {
+        if (iWeight == weight) return;
+        iWeight = weight;
+        if (iModel != null) iModel.invalidateTotalValue();
+    }
+    
+    /**
+     * Is the value of this criterion the total kept in its {@link ValueContext}, so that the weighted changes can be
+     * added to the running total of the model (see {@link Model#getTotalValueContext(Assignment)})? This is not the
+     * case when {@link Criterion#getValue(Assignment)}, {@link Criterion#getWeightedValue(Assignment)}, or
+     * {@link Criterion#getWeight()} is overridden.
+     * @return true if the weighted value of this criterion is kept in the running total of the model
+     */
+    public boolean isValueIncremental() {
+        if (iValueIncremental == null) {
+            try {
+                iValueIncremental = 
+                        getClass().getMethod("getValue", Assignment.class).getDeclaringClass() == AbstractCriterion.class &&
+                        getClass().getMethod("getWeightedValue", Assignment.class).getDeclaringClass() == AbstractCriterion.class &&
+                        getClass().getMethod("getWeight").getDeclaringClass() == AbstractCriterion.class;
+            } catch (NoSuchMethodException e) {
+                iValueIncremental = false;
+            }
+        }
+        return iValueIncremental;
+    }
+    
+    /**
+     * Running total of the model that is to be updated with the weighted changes of this criterion
+     * @param assignment current assignment
+     * @return null if the value of this criterion is not incremental (see {@link AbstractCriterion#isValueIncremental()})
+     */
+    protected Model<V, T>.TotalValueContext getTotalValueContext(Assignment<V, T> assignment) {
+        return (iModel != null && isValueIncremental() ? iModel.getTotalValueContext(assignment) : null);
+    }
+    
+    /**
+     * Update the value context of this criterion and the running total of the model
+     * @param assignment current assignment
+     * @param value assigned or unassigned value
+     * @param assigned true if the value was assigned, false if unassigned
+     */
+    protected void update(Assignment<V, T> assignment, T value, boolean assigned) {
+        ValueContext context = getContext(assignment);
+        Model<V, T>.TotalValueContext total = getTotalValueContext(assignment);
+        double before = context.getTotal();
+        if (assigned)
+            context.assigned(assignment, value);
+        else
+            context.unassigned(assignment, value);
+        if (total != null && iWeight != 0.0)
+            total.inc(iWeight * (context.getTotal() - before));
+    }
+    
     @Override
     public double getWeightedBest() {
         return getWeight() == 0.0 ? 0.0 : getWeight() * getBest();
@@ -238,7 +306,7 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
         switch (getValueUpdateType()) {
             case AfterUnassignedBeforeAssigned:
             case BeforeUnassignedBeforeAssigned:
-                getContext(assignment).assigned(assignment, value);
+                update(assignment, value, true);
         }
     }
 
@@ -247,7 +315,7 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
         switch (getValueUpdateType()) {
             case AfterUnassignedAfterAssigned:
             case BeforeUnassignedAfterAssigned:
-                getContext(assignment).assigned(assignment, value);
+                update(assignment, value, true);
         }
     }
 
@@ -256,7 +324,7 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
         switch (getValueUpdateType()) {
             case BeforeUnassignedAfterAssigned:
             case BeforeUnassignedBeforeAssigned:
-                getContext(assignment).unassigned(assignment, value);
+                update(assignment, value, false);
         }
     }
 
@@ -265,7 +333,7 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
         switch (getValueUpdateType()) {
             case AfterUnassignedAfterAssigned:
             case AfterUnassignedBeforeAssigned:
-                getContext(assignment).unassigned(assignment, value);
+                update(assignment, value, false);
         }
     }
 
@@ -281,7 +349,10 @@ public abstract class AbstractCriterion<V extends Variable<V, T>, T extends Valu
     
     @Override
     public void inc(Assignment<V, T> assignment, double value) {
+        Model<V, T>.TotalValueContext total = getTotalValueContext(assignment);
         getContext(assignment).inc(value);
+        if (total != null && iWeight != 0.0)
+            total.inc(iWeight * value);
     }   
 
     @Override
@@ -74,13 +74,13 @@ public class DbtVariableSelection<V extends Variable<V, T>, T extends Value<V, T
             return null;
         }
         if (iProp != null) {
-            for (V variable : solution.getAssignment().unassignedVariables(solution.getModel())) {
+            for (V variable : solution.getAssignment().unassignedVariablesView(solution.getModel())) {
                 if (iProp.goodValues(solution.getAssignment(), variable).isEmpty()) {
                     return variable;
                 }
             }
         }
-        return ToolBox.random(solution.getAssignment().unassignedVariables(solution.getModel()));
+        return ToolBox.random(solution.getAssignment().unassignedVariablesView(solution.getModel()));
     }
 
 }
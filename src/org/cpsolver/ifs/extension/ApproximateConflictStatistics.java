@@ -0,0 +1,412 @@
+package org.cpsolver.ifs.extension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.cpsolver.ifs.assignment.Assignment;
+import org.cpsolver.ifs.model.Constraint;
+import org.cpsolver.ifs.model.Value;
+import org.cpsolver.ifs.model.Variable;
+import org.cpsolver.ifs.solver.Solver;
+import org.cpsolver.ifs.util.DataProperties;
+
+/**
+ * Conflict-based statistics with a bounded memory. <br>
+ * <br>
+ * Same as {@link ConflictStatistics}, however, the counters are not kept in
+ * (unbounded) hash maps of lists, but in two count-min sketches of a fixed size.
+ * The first sketch counts how many times an assignment A = a caused the
+ * unassignment of the variable B (used by
+ * {@link ConflictStatistics#countRemovals(long, Value, Value)}), the second one
+ * counts how many times the assignment A = a caused the unassignment of B = b.
+ * The potential conflicts (see
+ * {@link ConflictStatistics#countPotentialConflicts(Assignment, long, Value, int)})
+ * are computed from a set-associative table of the most frequent causes of each
+ * unassignment: there are {@link ApproximateConflictStatistics#PARAM_SLOTS}
+ * slots for each bucket, a new cause replaces the least frequent one when the
+ * bucket is full. <br>
+ * <br>
+ * The returned counts are estimates: a count-min sketch never underestimates,
+ * but it may overestimate a counter when there are many collisions. The
+ * potential conflicts, on the other hand, are usually underestimated: only the
+ * (at most Slots) most frequent causes of each bucket are counted, so when a
+ * value has been unassigned by many different assignments (a long tail of
+ * causes), most of them are not included. On such problems, the count can be
+ * an order of magnitude below the one of {@link ConflictStatistics} (e.g., about
+ * 90% lower with the default settings and a uniformly spread tail); increase
+ * the number of slots (and/or buckets) when the potential conflicts matter. <br>
+ * <br>
+ * The counters are updated using compare-and-set operations and there is no
+ * lock, so the solver threads of the
+ * {@link org.cpsolver.ifs.solver.ParallelSolver} do not wait for each other.
+ * Ageing is supported using epochs of
+ * {@link ApproximateConflictStatistics#PARAM_DECAY} iterations: each counter
+ * keeps the epoch it was last updated in and its value relative to the first
+ * iteration of that epoch. A counter is rescaled to the current epoch lazily,
+ * by the compare-and-set of the next update, and a lookup scales it by the
+ * number of iterations since the start of its epoch. There is no decay of the
+ * whole table. When ageing is enabled, a counter is kept as a float (next to
+ * its epoch in a single long), which is precise enough since aged counters
+ * stay bounded. <br>
+ * <br>
+ * The memory used is about 16 x Width x Depth + 8 x Buckets x Slots bytes
+ * (plus the slot entries), regardless of the length of the search. Printing of
+ * the no-goods (parameter ConflictStatistics.Print) is not supported.
+ * <br>
+ * <br>
+ * Parameters: <br>
+ * <table border='1' summary='Related Solver Parameters'>
+ * <tr>
+ * <th>Parameter</th>
+ * <th>Type</th>
+ * <th>Comment</th>
+ * </tr>
+ * <tr>
+ * <td>ApproximateConflictStatistics.Width</td>
+ * <td>{@link Integer}</td>
+ * <td>Number of counters in each row of a sketch (rounded up to a power of two, defaults to 65536)</td>
+ * </tr>
+ * <tr>
+ * <td>ApproximateConflictStatistics.Depth</td>
+ * <td>{@link Integer}</td>
+ * <td>Number of rows (hash functions) of a sketch (defaults to 4)</td>
+ * </tr>
+ * <tr>
+ * <td>ApproximateConflictStatistics.Buckets</td>
+ * <td>{@link Integer}</td>
+ * <td>Number of buckets of the table of conflict causes (rounded up to a power of two, defaults to 16384)</td>
+ * </tr>
+ * <tr>
+ * <td>ApproximateConflictStatistics.Slots</td>
+ * <td>{@link Integer}</td>
+ * <td>Number of conflict causes kept in each bucket (defaults to 8)</td>
+ * </tr>
+ * <tr>
+ * <td>ApproximateConflictStatistics.DecayInterval</td>
+ * <td>{@link Integer}</td>
+ * <td>Number of iterations of an epoch, the counters are rescaled when they are updated in a later epoch, only used when ageing is enabled (defaults to 1000)</td>
+ * </tr>
+ * </table>
+ * Ageing parameters ConflictStatistics.Ageing and ConflictStatistics.AgeingHalfTime are the same as for {@link ConflictStatistics}.
+ *
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ * @param <V> Variable
+ * @param <T> Value
+ */
+public class ApproximateConflictStatistics<V extends Variable<V, T>, T extends Value<V, T>> extends ConflictStatistics<V, T> {
+    public static final String PARAM_WIDTH = "ApproximateConflictStatistics.Width";
+    public static final String PARAM_DEPTH = "ApproximateConflictStatistics.Depth";
+    public static final String PARAM_BUCKETS = "ApproximateConflictStatistics.Buckets";
+    public static final String PARAM_SLOTS = "ApproximateConflictStatistics.Slots";
+    public static final String PARAM_DECAY = "ApproximateConflictStatistics.DecayInterval";
+
+    private static final long sVariableSeed = 0x9E3779B97F4A7C15l;
+    private static final long sValueSeed = 0xC2B2AE3D27D4EB4Fl;
+
+    private Sketch iRemovals, iCauses;
+    private AtomicReferenceArray<Cause<T>> iTable;
+    private int iSlots;
+
+    public ApproximateConflictStatistics(Solver<V, T> solver, DataProperties properties) {
+        super(solver, properties);
+        int width = properties.getPropertyInt(PARAM_WIDTH, 65536);
+        int depth = Math.max(1, properties.getPropertyInt(PARAM_DEPTH, 4));
+        int epoch = Math.max(1, properties.getPropertyInt(PARAM_DECAY, 1000));
+        iRemovals = new Sketch(width, depth, getAgeing(), epoch);
+        iCauses = new Sketch(width, depth, getAgeing(), epoch);
+        iSlots = Math.max(1, properties.getPropertyInt(PARAM_SLOTS, 8));
+        iTable = new AtomicReferenceArray<Cause<T>>(powerOfTwo(properties.getPropertyInt(PARAM_BUCKETS, 16384)) * iSlots);
+    }
+
+    private static int powerOfTwo(int size) {
+        int ret = 1;
+        while (ret < size && ret < (1 << 30)) ret <<= 1;
+        return ret;
+    }
+
+    private static long mix(long h) {
+        h ^= (h >>> 33);
+        h *= 0xFF51AFD7ED558CCDl;
+        h ^= (h >>> 33);
+        h *= 0xC4CEB9FE1A85EC53l;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    /** Hash of the pair (unassigned variable, assigned value) */
+    private long removalHash(V variable, T value) {
+        return mix(variable.hashCode() * sVariableSeed + value.hashCode());
+    }
+
+    /** Hash of the pair (unassigned value, assigned value) */
+    private long causeHash(T unassignedValue, T value) {
+        return mix(unassignedValue.hashCode() * sValueSeed + value.hashCode());
+    }
+
+    /** First slot of the bucket of the given unassigned value */
+    private int bucket(T unassignedValue) {
+        int buckets = iTable.length() / iSlots;
+        return (int) (mix(unassignedValue.hashCode()) & (buckets - 1)) * iSlots;
+    }
+
+    @Override
+    public void reset() {
+        iRemovals.clear();
+        iCauses.clear();
+        for (int i = 0; i < iTable.length(); i++)
+            iTable.set(i, null);
+    }
+
+    @Override
+    public void variableUnassigned(long iteration, T unassignedValue, T assignedValue) {
+        if (iteration <= 0) return;
+        iRemovals.add(removalHash(unassignedValue.variable(), assignedValue), iteration);
+        double count = iCauses.add(causeHash(unassignedValue, assignedValue), iteration);
+        remember(iteration, unassignedValue, assignedValue, count);
+    }
+
+    /**
+     * Put the pair (unassigned value, assigned value) into the table of conflict
+     * causes, replacing the least frequent cause of the bucket if it is full
+     */
+    private void remember(long iteration, T unassignedValue, T assignedValue, double count) {
+        int first = bucket(unassignedValue);
+        int weakest = -1;
+        double weakestCount = 0.0;
+        Cause<T> weakestCause = null;
+        for (int i = first; i < first + iSlots; i++) {
+            Cause<T> cause = iTable.get(i);
+            if (cause == null) {
+                if (iTable.compareAndSet(i, null, new Cause<T>(unassignedValue, assignedValue)))
+                    return;
+                cause = iTable.get(i);
+                if (cause == null) continue;
+            }
+            if (cause.isSame(unassignedValue, assignedValue))
+                return;
+            double c = iCauses.get(causeHash(cause.getUnassigned(), cause.getAssigned()), iteration);
+            if (weakest < 0 || c < weakestCount) {
+                weakest = i;
+                weakestCount = c;
+                weakestCause = cause;
+            }
+        }
+        if (weakest >= 0 && weakestCount < count)
+            iTable.compareAndSet(weakest, weakestCause, new Cause<T>(unassignedValue, assignedValue));
+    }
+
+    @Override
+    public double countRemovals(long iteration, T conflictValue, T value) {
+        return iRemovals.get(removalHash(conflictValue.variable(), value), iteration);
+    }
+
+    @Override
+    public long countPotentialConflicts(Assignment<V, T> assignment, long iteration, T value, int limit) {
+        int first = bucket(value);
+        long count = 0;
+        for (int i = first; i < first + iSlots; i++) {
+            Cause<T> cause = iTable.get(i);
+            if (cause == null || !cause.getUnassigned().equals(value)) continue;
+            T ass = cause.getAssigned();
+            if (assignment.getValue(ass.variable()) == null) {
+                double counter = iCauses.get(causeHash(value, ass), iteration);
+                if (limit >= 0) {
+                    count += counter * Math.max(0, 1 + limit - value.variable().getModel().conflictValues(assignment, ass).size());
+                } else {
+                    count += counter;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void constraintAfterAssigned(Assignment<V, T> assignment, long iteration, Constraint<V, T> constraint, T assigned, Set<T> unassigned) {
+        if (iteration <= 0)
+            return;
+        if (unassigned == null || unassigned.isEmpty())
+            return;
+        for (T unassignedValue : unassigned)
+            variableUnassigned(iteration, unassignedValue, assigned);
+    }
+
+    @Override
+    public String toString() {
+        final long iteration = (getSolver() == null || getSolver().currentSolution() == null ? 0l : getSolver().currentSolution().getIteration());
+        List<Cause<T>> causes = new ArrayList<Cause<T>>();
+        for (int i = 0; i < iTable.length(); i++) {
+            Cause<T> cause = iTable.get(i);
+            if (cause == null) continue;
+            causes.add(cause);
+        }
+        Collections.sort(causes, new Comparator<Cause<T>>() {
+            @Override
+            public int compare(Cause<T> c1, Cause<T> c2) {
+                return -Double.compare(iCauses.get(causeHash(c1.getUnassigned(), c1.getAssigned()), iteration), iCauses.get(causeHash(c2.getUnassigned(), c2.getAssigned()), iteration));
+            }
+        });
+        StringBuffer sb = new StringBuffer("Statistics{");
+        int printed = 0;
+        for (Cause<T> cause : causes) {
+            double c = iCauses.get(causeHash(cause.getUnassigned(), cause.getAssigned()), iteration);
+            sb.append("\n      ").append(Math.round(c) + "x ").append(cause.getUnassigned().variable().getName()).append(" = ").append(cause.getUnassigned().getName())
+                .append(" <= ").append(cause.getAssigned().variable().getName()).append(" = ").append(cause.getAssigned().getName());
+            if (++printed == 100) {
+                sb.append("\n      ...");
+                break;
+            }
+        }
+        sb.append("\n    }");
+        return sb.toString();
+    }
+
+    /**
+     * Conflict cause: assignment of the given value caused the unassignment of
+     * the given unassigned value
+     */
+    private static class Cause<T> {
+        private T iUnassigned, iAssigned;
+
+        private Cause(T unassigned, T assigned) {
+            iUnassigned = unassigned;
+            iAssigned = assigned;
+        }
+
+        private T getUnassigned() { return iUnassigned; }
+
+        private T getAssigned() { return iAssigned; }
+
+        private boolean isSame(T unassigned, T assigned) {
+            return iUnassigned.equals(unassigned) && iAssigned.equals(assigned);
+        }
+    }
+
+    /**
+     * Count-min sketch updated using compare-and-set. Without ageing, a counter is
+     * a double. With ageing, a counter is an epoch (upper 32 bits) and a float
+     * value relative to the first iteration of the epoch (lower 32 bits).
+     */
+    private static class Sketch {
+        private AtomicLongArray iCounters;
+        private int iWidth, iDepth;
+        private double iAgeing, iEpochAgeing;
+        private int iEpochLength;
+
+        private Sketch(int width, int depth, double ageing, int epochLength) {
+            iWidth = powerOfTwo(width);
+            iDepth = depth;
+            iCounters = new AtomicLongArray(iWidth * iDepth);
+            iAgeing = ageing;
+            iEpochLength = epochLength;
+            iEpochAgeing = Math.pow(ageing, epochLength);
+        }
+
+        private int index(long hash, int row) {
+            long h = mix(hash + row * sVariableSeed);
+            return row * iWidth + (int) (h & (iWidth - 1));
+        }
+
+        private boolean isAged() {
+            return iAgeing != 1.0;
+        }
+
+        /** Epoch of the given iteration */
+        private int epoch(long iteration) {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0l, iteration) / iEpochLength);
+        }
+
+        /** Value of an aged counter, relative to the first iteration of its epoch */
+        private static double value(long counter) {
+            return Float.intBitsToFloat((int) counter);
+        }
+
+        /** Epoch of an aged counter */
+        private static int epochOf(long counter) {
+            return (int) (counter >>> 32);
+        }
+
+        /** Aged counter of the given epoch and value */
+        private static long counter(int epoch, double value) {
+            return (((long) epoch) << 32) | (Float.floatToRawIntBits((float) value) & 0xffffffffl);
+        }
+
+        /** Counter adapted to the given iteration (not aged if the iteration is not known) */
+        private double aged(long counter, long iteration) {
+            if (!isAged()) return Double.longBitsToDouble(counter);
+            double value = value(counter);
+            if (iteration <= 0l || value == 0.0) return value;
+            return value * Math.pow(iAgeing, iteration - ((long) epochOf(counter)) * iEpochLength);
+        }
+
+        /** Count an event of the given iteration, return the new estimate */
+        private double add(long hash, long iteration) {
+            double min = Double.MAX_VALUE;
+            int epoch = epoch(iteration);
+            double weight = (isAged() ? Math.pow(iAgeing, ((long) epoch) * iEpochLength - iteration) : 1.0);
+            for (int row = 0; row < iDepth; row++) {
+                int idx = index(hash, row);
+                while (true) {
+                    long old = iCounters.get(idx);
+                    long counter;
+                    if (!isAged()) {
+                        counter = Double.doubleToRawLongBits(Double.longBitsToDouble(old) + weight);
+                    } else {
+                        int e = epochOf(old);
+                        if (e == epoch || old == 0l) {
+                            counter = counter(epoch, value(old) + weight);
+                        } else if (e < epoch) {
+                            // counter of an older epoch, rescale it to the current one
+                            counter = counter(epoch, value(old) * Math.pow(iEpochAgeing, epoch - e) + weight);
+                        } else {
+                            // some other thread is already in a later epoch
+                            counter = counter(e, value(old) + weight * Math.pow(iEpochAgeing, e - epoch));
+                        }
+                    }
+                    if (iCounters.compareAndSet(idx, old, counter)) {
+                        double value = aged(counter, iteration);
+                        if (value < min) min = value;
+                        break;
+                    }
+                }
+            }
+            return min;
+        }
+
+        /** Estimate of the counter of the given hash, adapted to the given iteration */
+        private double get(long hash, long iteration) {
+            double min = Double.MAX_VALUE;
+            for (int row = 0; row < iDepth; row++) {
+                double value = aged(iCounters.get(index(hash, row)), iteration);
+                if (value < min) min = value;
+            }
+            return min;
+        }
+
+        private void clear() {
+            for (int idx = 0; idx < iCounters.length(); idx++)
+                iCounters.set(idx, 0l);
+        }
+    }
+}
@@ -180,6 +180,14 @@ public class ConflictStatistics<V extends Variable<V, T>, T extends Value<V, T>>
         iPrint = properties.getPropertyBoolean(PARAM_PRINT, iPrint);
     }
 
+    /**
+     * Ageing factor, i.e., how much a memorized conflict is decreased by every iteration
+     * @return ageing factor (1.0 means no ageing)
+     */
+    public double getAgeing() {
+        return iAgeing;
+    }
+
     @Override
     public void register(Model<V, T> model) {
         super.register(model);
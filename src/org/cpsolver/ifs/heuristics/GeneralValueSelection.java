@@ -11,6 +11,7 @@ import org.cpsolver.ifs.extension.ConflictStatistics;
 import org.cpsolver.ifs.extension.Extension;
 import org.cpsolver.ifs.extension.MacPropagation;
 import org.cpsolver.ifs.extension.ViolatedInitials;
+import org.cpsolver.ifs.model.ConflictSet;
 import org.cpsolver.ifs.model.Model;
 import org.cpsolver.ifs.model.Value;
 import org.cpsolver.ifs.model.Variable;
@@ -202,10 +203,10 @@ public class GeneralValueSelection<V extends Variable<V, T>, T extends Value<V,
         if (iMPP) {
             if (selectedVariable.getInitialAssignment() != null) {
                 if (solution.getModel().variables().size() == solution.getAssignment().nrAssignedVariables()) {
-                    if (solution.getModel().perturbVariables(solution.getAssignment()).size() <= iMPPLimit)
-                        iMPPLimit = solution.getModel().perturbVariables(solution.getAssignment()).size() - 1;
+                    if (solution.getModel().countPerturbVariables(solution.getAssignment()) <= iMPPLimit)
+                        iMPPLimit = solution.getModel().countPerturbVariables(solution.getAssignment()) - 1;
                 }
-                if (iMPPLimit >= 0 && solution.getModel().perturbVariables(solution.getAssignment()).size() > iMPPLimit)
+                if (iMPPLimit >= 0 && solution.getModel().countPerturbVariables(solution.getAssignment()) > iMPPLimit)
                     return selectedVariable.getInitialAssignment();
                 if (selectedVariable.getInitialAssignment() != null && ToolBox.random() <= iInitialSelectionProb)
                     return selectedVariable.getInitialAssignment();
@@ -227,59 +228,65 @@ public class GeneralValueSelection<V extends Variable<V, T>, T extends Value<V,
         List<T> bestValues = null;
         double bestWeightedSum = 0;
 
-        for (T value : values) {
-            if (iTabu != null && iTabu.contains(value))
-                continue;
-            if (oldValue != null && oldValue.equals(value))
-                continue;
+        ConflictSet<T> conf = ConflictSet.acquire();
+        try {
+            for (T value : values) {
+                if (iTabu != null && iTabu.contains(value))
+                    continue;
+                if (oldValue != null && oldValue.equals(value))
+                    continue;
 
-            Collection<T> conf = solution.getModel().conflictValues(solution.getAssignment(), value);
-            if (conf.contains(value))
-                continue;
+                conf.clear();
+                solution.getModel().computeConflicts(solution.getAssignment(), value, conf);
+                if (conf.contains(value))
+                    continue;
 
-            double weightedConflicts = (iStat == null || iWeightWeightedCoflicts == 0.0 ? 0.0 : iStat.countRemovals(solution.getIteration(), conf, value));
-            double potentialConflicts = (iStat == null || iWeightPotentialConflicts == 0.0 ? 0.0 : iStat.countPotentialConflicts(solution.getAssignment(), solution.getIteration(), value, 3));
+                double weightedConflicts = (iStat == null || iWeightWeightedCoflicts == 0.0 ? 0.0 : iStat.countRemovals(solution.getIteration(), conf, value));
+                double potentialConflicts = (iStat == null || iWeightPotentialConflicts == 0.0 ? 0.0 : iStat.countPotentialConflicts(solution.getAssignment(), solution.getIteration(), value, 3));
 
-            long deltaInitialAssignments = 0;
-            if (iMPP && iWeightDeltaInitialAssignment != 0.0) {
-                if (iViolatedInitials != null) {
-                    Set<T> violations = iViolatedInitials.getViolatedInitials(value);
-                    if (violations != null) {
-                        for (T aValue : violations) {
-                            T aOld = solution.getAssignment().getValue(aValue.variable());
-                            if (aOld == null || aOld.equals(aValue))
-                                deltaInitialAssignments += 2;
+                long deltaInitialAssignments = 0;
+                if (iMPP && iWeightDeltaInitialAssignment != 0.0) {
+                    if (iViolatedInitials != null) {
+                        Set<T> violations = iViolatedInitials.getViolatedInitials(value);
+                        if (violations != null) {
+                            for (T aValue : violations) {
+                                T aOld = solution.getAssignment().getValue(aValue.variable());
+                                if (aOld == null || aOld.equals(aValue))
+                                    deltaInitialAssignments += 2;
+                            }
                         }
                     }
+                    for (Iterator<T> it1 = conf.iterator(); it1.hasNext();) {
+                        T aValue = it1.next();
+                        if (aValue.variable().getInitialAssignment() != null)
+                            deltaInitialAssignments--;
+                    }
+                    if (selectedVariable.getInitialAssignment() != null
+                            && !selectedVariable.getInitialAssignment().equals(value)) {
+                        deltaInitialAssignments++;
+                    }
+                    if (iMPPLimit >= 0 && (solution.getModel().countPerturbVariables(solution.getAssignment()) + deltaInitialAssignments) > iMPPLimit)
+                        continue;
                 }
-                for (Iterator<T> it1 = conf.iterator(); it1.hasNext();) {
-                    T aValue = it1.next();
-                    if (aValue.variable().getInitialAssignment() != null)
-                        deltaInitialAssignments--;
-                }
-                if (selectedVariable.getInitialAssignment() != null
-                        && !selectedVariable.getInitialAssignment().equals(value)) {
-                    deltaInitialAssignments++;
-                }
-                if (iMPPLimit >= 0 && (solution.getModel().perturbVariables(solution.getAssignment()).size() + deltaInitialAssignments) > iMPPLimit)
-                    continue;
-            }
 
-            double weightedSum = (iWeightDeltaInitialAssignment * deltaInitialAssignments)
-                    + (iWeightPotentialConflicts * potentialConflicts) + (iWeightWeightedCoflicts * weightedConflicts)
-                    + (iWeightCoflicts * conf.size()) + (iWeightValue * value.toDouble(solution.getAssignment()));
+                double weightedSum = (iWeightDeltaInitialAssignment * deltaInitialAssignments)
+                        + (iWeightPotentialConflicts * potentialConflicts) + (iWeightWeightedCoflicts * weightedConflicts)
+                        + (iWeightCoflicts * conf.size()) + (iWeightValue * value.toDouble(solution.getAssignment()));
 
-            if (bestValues == null || bestWeightedSum > weightedSum) {
-                bestWeightedSum = weightedSum;
-                if (bestValues == null)
-                    bestValues = new ArrayList<T>();
-                else
-                    bestValues.clear();
-                bestValues.add(value);
-            } else {
-                if (bestWeightedSum == weightedSum)
+                if (bestValues == null || bestWeightedSum > weightedSum) {
+                    bestWeightedSum = weightedSum;
+                    if (bestValues == null)
+                        bestValues = new ArrayList<T>();
+                    else
+                        bestValues.clear();
                     bestValues.add(value);
+                } else {
+                    if (bestWeightedSum == weightedSum)
+                        bestValues.add(value);
+                }
             }
+        } finally {
+            conf.release();
         }
 
         T selectedValue = (bestValues == null ? null : ToolBox.random(bestValues));
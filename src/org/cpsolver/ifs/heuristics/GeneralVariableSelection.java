@@ -130,14 +130,15 @@ public class GeneralVariableSelection<V extends Variable<V, T>, T extends Value<
     @Override
     public V selectVariable(Solution<V, T> solution) {
         if (solution.getModel().variables().size() == solution.getAssignment().nrAssignedVariables()) {
-            if (!solution.getModel().perturbVariables(solution.getAssignment()).isEmpty())
-                return ToolBox.random(solution.getModel().perturbVariables(solution.getAssignment()));
+            V variable = solution.getModel().randomPerturbVariable(solution.getAssignment());
+            if (variable != null)
+                return variable;
             else
                 return ToolBox.random(solution.getAssignment().assignedVariables());
         } else {
             if (iProp != null && iUnassignWhenNotGood) {
                 List<V> noGoodVariables = new ArrayList<V>();
-                for (V variable : solution.getAssignment().unassignedVariables(solution.getModel())) {
+                for (V variable : solution.getAssignment().unassignedVariablesView(solution.getModel())) {
                     if (iProp.goodValues(solution.getAssignment(), variable).isEmpty())
                         noGoodVariables.add(variable);
                 }
@@ -154,23 +155,23 @@ public class GeneralVariableSelection<V extends Variable<V, T>, T extends Value<
                 }
             }
             if (iRandomSelection)
-                return ToolBox.random(solution.getAssignment().unassignedVariables(solution.getModel()));
+                return ToolBox.random(solution.getAssignment().unassignedVariablesView(solution.getModel()));
             List<Integer> points = new ArrayList<Integer>();
             int totalPoints = 0;
-            for (V variable : solution.getAssignment().unassignedVariables(solution.getModel())) {
+            for (V variable : solution.getAssignment().unassignedVariablesView(solution.getModel())) {
                 int pointsThisVariable = (variable.getInitialAssignment() != null ? 3 * (1 + solution.getModel().conflictValues(solution.getAssignment(), variable.getInitialAssignment()).size()) : 1);
                 totalPoints += pointsThisVariable;
                 points.add(totalPoints);
             }
             int rndPoints = ToolBox.random(totalPoints);
-            Iterator<V> x = solution.getAssignment().unassignedVariables(solution.getModel()).iterator();
+            Iterator<V> x = solution.getAssignment().unassignedVariablesView(solution.getModel()).iterator();
             for (int i = 0; x.hasNext() && i < points.size(); i++) {
                 V variable = x.next();
                 int tp = points.get(i);
                 if (tp > rndPoints)
                     return variable;
             }
-            return ToolBox.random(solution.getAssignment().unassignedVariables(solution.getModel()));
+            return ToolBox.random(solution.getAssignment().unassignedVariablesView(solution.getModel()));
         }
     }
 
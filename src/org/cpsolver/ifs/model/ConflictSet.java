@@ -0,0 +1,244 @@
+package org.cpsolver.ifs.model;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of conflicting values that can be reused. The values are kept in a dense array (in the order
+ * in which they were added), together with an open addressing hash table of their positions. Unlike
+ * {@link java.util.HashSet}, clearing the set takes O(size) and no objects are created when a value
+ * is added, so that the same instance can be used for many conflict computations (see
+ * {@link Model#computeConflicts(org.cpsolver.ifs.assignment.Assignment, Value, java.util.Set)}).
+ * <br><br>
+ * The set is not thread-safe. Use {@link ConflictSet#acquire()} and {@link ConflictSet#release()}
+ * to borrow an empty set from a pool that is kept for each thread.
+ *
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ *
+ * @param <T> Value
+ */
+public class ConflictSet<T> extends AbstractSet<T> {
+    private static final int sMaxPoolSize = 16;
+    private static ThreadLocal<List<ConflictSet<?>>> sPool = new ThreadLocal<List<ConflictSet<?>>>() {
+        @Override
+        protected List<ConflictSet<?>> initialValue() {
+            return new ArrayList<ConflictSet<?>>();
+        }
+    };
+
+    private Object[] iElements;
+    private int[] iTable;
+    private int iSize = 0;
+    private int iModCount = 0;
+    private boolean iPooled = false;
+
+    /** Create an empty set */
+    public ConflictSet() {
+        this(16);
+    }
+
+    /**
+     * Create an empty set
+     * @param capacity expected number of values
+     */
+    public ConflictSet(int capacity) {
+        int tableSize = 4;
+        while (tableSize < 2 * capacity) tableSize <<= 1;
+        iElements = new Object[tableSize / 2];
+        iTable = new int[tableSize];
+    }
+
+    /**
+     * Borrow an empty set from the pool of the current thread. The set should be returned using {@link ConflictSet#release()}
+     * when it is no longer needed. The borrowed sets can be nested (e.g., a constraint computing its conflicts using another
+     * borrowed set).
+     * @param <T> Value
+     * @return an empty set
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ConflictSet<T> acquire() {
+        List<ConflictSet<?>> pool = sPool.get();
+        ConflictSet<T> set = (pool.isEmpty() ? new ConflictSet<T>() : (ConflictSet<T>) pool.remove(pool.size() - 1));
+        set.iPooled = true;
+        return set;
+    }
+
+    /**
+     * Clear the set and return it to the pool of the current thread (see {@link ConflictSet#acquire()}).
+     */
+    public void release() {
+        if (!iPooled) return;
+        clear();
+        iPooled = false;
+        List<ConflictSet<?>> pool = sPool.get();
+        if (pool.size() < sMaxPoolSize) pool.add(this);
+    }
+
+    private int hash(Object o) {
+        int h = o.hashCode();
+        h ^= (h >>> 16);
+        return (h * 0x9E3779B9) & (iTable.length - 1);
+    }
+
+    /** Slot of the hash table containing the given value, -1 if not present */
+    private int slot(Object o) {
+        int mask = iTable.length - 1;
+        for (int i = hash(o); ; i = (i + 1) & mask) {
+            int pos = iTable[i];
+            if (pos == 0) return -1;
+            Object e = iElements[pos - 1];
+            if (e == o || e.equals(o)) return i;
+        }
+    }
+
+    /** Slot of the hash table containing the given position */
+    private int slotOfPosition(int pos) {
+        int mask = iTable.length - 1;
+        int i = hash(iElements[pos]);
+        while (iTable[i] != pos + 1) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void rehash(int tableSize) {
+        iTable = new int[tableSize];
+        iElements = Arrays.copyOf(iElements, tableSize / 2);
+        int mask = tableSize - 1;
+        for (int pos = 0; pos < iSize; pos++) {
+            int i = hash(iElements[pos]);
+            while (iTable[i] != 0) i = (i + 1) & mask;
+            iTable[i] = pos + 1;
+        }
+    }
+
+    @Override
+    public boolean add(T value) {
+        if (slot(value) >= 0) return false;
+        if (iSize == iElements.length) rehash(2 * iTable.length);
+        int mask = iTable.length - 1;
+        int i = hash(value);
+        while (iTable[i] != 0) i = (i + 1) & mask;
+        iElements[iSize] = value;
+        iTable[i] = ++iSize;
+        iModCount++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o != null && slot(o) >= 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        int i = slot(o);
+        if (i < 0) return false;
+        int pos = iTable[i] - 1;
+        deleteSlot(i);
+        int last = iSize - 1;
+        if (pos < last) {
+            // move the last value to the freed position
+            iTable[slotOfPosition(last)] = pos + 1;
+            iElements[pos] = iElements[last];
+        }
+        iElements[last] = null;
+        iSize--;
+        iModCount++;
+        return true;
+    }
+
+    /** Remove a slot from the hash table, shifting the following entries of the cluster back */
+    private void deleteSlot(int i) {
+        int mask = iTable.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (iTable[j] == 0) break;
+            int k = hash(iElements[iTable[j] - 1]);
+            if ((j > i && (k <= i || k > j)) || (j < i && (k <= i && k > j))) {
+                iTable[i] = iTable[j];
+                i = j;
+            }
+        }
+        iTable[i] = 0;
+    }
+
+    @Override
+    public void clear() {
+        if (iSize == 0) return;
+        if (4 * iSize >= iTable.length) {
+            Arrays.fill(iTable, 0);
+        } else {
+            int mask = iTable.length - 1;
+            for (int pos = 0; pos < iSize; pos++) {
+                int i = hash(iElements[pos]);
+                while (iTable[i] != pos + 1) i = (i + 1) & mask;
+                iTable[i] = 0;
+            }
+        }
+        Arrays.fill(iElements, 0, iSize, null);
+        iSize = 0;
+        iModCount++;
+    }
+
+    @Override
+    public int size() {
+        return iSize;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int iNext = 0;
+            private int iLast = -1;
+            private int iExpectedModCount = iModCount;
+
+            @Override
+            public boolean hasNext() {
+                return iNext < iSize;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (iExpectedModCount != iModCount) throw new ConcurrentModificationException();
+                if (iNext >= iSize) throw new NoSuchElementException();
+                iLast = iNext;
+                return (T) iElements[iNext++];
+            }
+
+            @Override
+            public void remove() {
+                if (iLast < 0) throw new IllegalStateException();
+                if (iExpectedModCount != iModCount) throw new ConcurrentModificationException();
+                ConflictSet.this.remove(iElements[iLast]);
+                // the last value has been moved to the removed position
+                iNext = iLast;
+                iLast = -1;
+                iExpectedModCount = iModCount;
+            }
+        };
+    }
+}
@@ -215,9 +215,13 @@ public abstract class Constraint<V extends Variable<V, T>, T extends Value<V, T>
      * @return true if there is a conflict with other assigned variables of the constraint
      */
     public boolean inConflict(Assignment<V, T> assignment, T value) {
-        Set<T> conflicts = new HashSet<T>();
-        computeConflicts(assignment, value, conflicts);
-        return !conflicts.isEmpty();
+        ConflictSet<T> conflicts = ConflictSet.acquire();
+        try {
+            computeConflicts(assignment, value, conflicts);
+            return !conflicts.isEmpty();
+        } finally {
+            conflicts.release();
+        }
     }
 
     /**
@@ -38,6 +38,7 @@ import org.cpsolver.ifs.model.Variable;
  */
 public abstract class LazyNeighbour<V extends Variable<V, T>, T extends Value<V, T>> implements Neighbour<V,T> {
     private LazyNeighbourAcceptanceCriterion<V,T> iCriterion = null;
+    private int iSavepoint = 0;
     
     /**
      * Set acceptance criterion (to be used by a search strategy before the 
@@ -64,9 +65,14 @@ public abstract class LazyNeighbour<V extends Variable<V, T>, T extends Value<V,
     @Override
     public void assign(Assignment<V, T> assignment, long iteration) {
         double before = getModel().getTotalValue(assignment);
-        doAssign(assignment, iteration);
-        double after = getModel().getTotalValue(assignment);
-        if (!iCriterion.accept(assignment, this, after - before)) undoAssign(assignment, iteration);
+        iSavepoint = assignment.savepoint();
+        try {
+            doAssign(assignment, iteration);
+            double after = getModel().getTotalValue(assignment);
+            if (!iCriterion.accept(assignment, this, after - before)) undoAssign(assignment, iteration);
+        } finally {
+            assignment.release(iSavepoint);
+        }
     }
     /**
      * Return -1 (neighbour is always accepted). The search strategy that
@@ -81,11 +87,14 @@ public abstract class LazyNeighbour<V extends Variable<V, T>, T extends Value<V,
      **/
     protected abstract void doAssign(Assignment<V, T> assignment, long iteration);
     
-    /** Undo assignment
+    /** Undo assignment. By default, all changes made by {@link LazyNeighbour#doAssign(Assignment, long)} are
+     * rolled back using the savepoint created before the assignment (see {@link Assignment#rollback(int)}).
      * @param assignment current assignment
      * @param iteration current iteration
      **/
-    protected abstract void undoAssign(Assignment<V, T> assignment, long iteration);
+    protected void undoAssign(Assignment<V, T> assignment, long iteration) {
+        assignment.rollback(iSavepoint);
+    }
     
     /** Return problem model (it is needed in order to be able to get
      * overall solution value before and after the assignment of this neighbour) 
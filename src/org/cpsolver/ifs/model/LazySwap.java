@@ -58,14 +58,6 @@ public class LazySwap<V extends Variable<V, T>, T extends Value<V, T>> extends L
         assignment.assign(iteration, iV2);
     }
     
-    /** Undo the swap */
-    @Override
-    protected void undoAssign(Assignment<V, T> assignment, long iteration) {
-        assignment.unassign(iteration, iV1.variable());
-        assignment.unassign(iteration, iV2.variable());
-        if (iOldV1 != null) assignment.assign(iteration, iOldV1);
-        if (iOldV2 != null) assignment.assign(iteration, iOldV2);
-    }
     /** Return problem model */
     @Override
     public Model<V,T> getModel() {
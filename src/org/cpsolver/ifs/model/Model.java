@@ -20,8 +20,11 @@ import org.cpsolver.ifs.assignment.DefaultSingleAssignment;
 import org.cpsolver.ifs.assignment.EmptyAssignment;
 import org.cpsolver.ifs.assignment.InheritedAssignment;
 import org.cpsolver.ifs.assignment.context.AssignmentContext;
+import org.cpsolver.ifs.assignment.context.AssignmentContextHelper;
 import org.cpsolver.ifs.assignment.context.AssignmentContextReference;
+import org.cpsolver.ifs.assignment.context.CanHoldContext;
 import org.cpsolver.ifs.assignment.context.HasAssignmentContext;
+import org.cpsolver.ifs.criteria.AbstractCriterion;
 import org.cpsolver.ifs.criteria.Criterion;
 import org.cpsolver.ifs.solution.Solution;
 import org.cpsolver.ifs.solver.Solver;
@@ -108,9 +111,17 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
     private Assignment<V, T> iAssignment = null;
     private Assignment<V, T> iEmptyAssignment = null;
     private Map<Integer, AssignmentContextReference<V, T, ? extends AssignmentContext>> iAssignmentContextReferences = new HashMap<Integer, AssignmentContextReference<V, T, ? extends AssignmentContext>>();
+    private volatile BestJournal<V, T> iBestJournal = null;
+    private TotalValue iTotalValue = new TotalValue();
+    private volatile int iTotalValueVersion = 0;
+    private static final int sTotalValueCheckPeriod = 1000;
+    private PerturbVariables iPerturbVariables = new PerturbVariables();
+    private volatile int iPerturbationsVersion = 0;
     
     /** Constructor */
     public Model() {
+        iTotalValue.setAssignmentContextReference(createReference(iTotalValue));
+        iPerturbVariables.setAssignmentContextReference(createReference(iPerturbVariables));
     }
 
     /** The list of variables in the model 
@@ -140,6 +151,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         for (ModelListener<V, T> listener : iModelListeners)
             listener.variableAdded(variable);
         invalidateVariablesWithInitialValueCache();
+        iBestJournal = null;
     }
 
     /** Removes a variable from the model
@@ -154,6 +166,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         for (ModelListener<V, T> listener : iModelListeners)
             listener.variableRemoved(variable);
         invalidateVariablesWithInitialValueCache();
+        iBestJournal = null;
         if (variable instanceof HasAssignmentContext)
             removeReference((HasAssignmentContext<V, T, ?>)variable);
     }
@@ -183,6 +196,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
             iInfoProviders.add((InfoProvider<V, T>) constraint);
         for (ModelListener<V, T> listener : iModelListeners)
             listener.constraintAdded(constraint);
+        invalidatePerturbations();
     }
 
     /** Removes a constraint from the model
@@ -196,6 +210,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
             iInfoProviders.remove(constraint);
         for (ModelListener<V, T> listener : iModelListeners)
             listener.constraintRemoved(constraint);
+        invalidatePerturbations();
         if (constraint instanceof HasAssignmentContext)
             removeReference((HasAssignmentContext<V, T, ?>)constraint);
     }
@@ -225,6 +240,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
             iInfoProviders.add((InfoProvider<V, T>) constraint);
         for (ModelListener<V, T> listener : iModelListeners)
             listener.constraintAdded(constraint);
+        invalidatePerturbations();
     }
 
     /** Removes a global constraint from the model
@@ -238,6 +254,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
             iInfoProviders.remove(constraint);
         for (ModelListener<V, T> listener : iModelListeners)
             listener.constraintRemoved(constraint);
+        invalidatePerturbations();
         if (constraint instanceof HasAssignmentContext)
             removeReference((HasAssignmentContext<V, T, ?>)constraint);
     }
@@ -328,11 +345,39 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
     /**
      * The list of perturbation variables in the model, i.e., the variables
      * which has an initial value but which are not assigned with this value.
+     * The perturbation variables are tracked incrementally for each assignment
+     * (see {@link PerturbVariablesContext}), the returned list is a copy.
      * @param assignment current assignment
      * @return list of perturbation variables in the model
      */
     public Collection<V> perturbVariables(Assignment<V, T> assignment) {
-        return perturbVariables(assignment, variablesWithInitialValue());
+        return iPerturbVariables.getContext(assignment).getPerturbVariables(assignment);
+    }
+    
+    /**
+     * The number of perturbation variables in the model, i.e., the size of {@link Model#perturbVariables(Assignment)}
+     * @param assignment current assignment
+     * @return number of perturbation variables in the model
+     */
+    public int countPerturbVariables(Assignment<V, T> assignment) {
+        return iPerturbVariables.getContext(assignment).countPerturbVariables(assignment);
+    }
+    
+    /**
+     * A randomly selected perturbation variable, i.e., a random element of {@link Model#perturbVariables(Assignment)}
+     * @param assignment current assignment
+     * @return a perturbation variable, null if there are none
+     */
+    public V randomPerturbVariable(Assignment<V, T> assignment) {
+        return iPerturbVariables.getContext(assignment).randomPerturbVariable(assignment);
+    }
+    
+    /**
+     * Invalidate the tracked perturbation variables of all assignments (see {@link Model#perturbVariables(Assignment)}), e.g.,
+     * because the conflicts of an initial value have changed without an assignment change. They will be recomputed when needed.
+     */
+    public void invalidatePerturbations() {
+        iPerturbationsVersion++;
     }
     
     /**
@@ -366,26 +411,31 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
                 if (!variable.getInitialAssignment().equals(value))
                     perturbances.add(variable);
             } else {
-                boolean hasPerturbance = false;
-                for (Constraint<V, T> constraint : variable.hardConstraints()) {
-                    if (constraint.inConflict(assignment, variable.getInitialAssignment())) {
-                        hasPerturbance = true;
-                        break;
-                    }
-                }
-                if (!hasPerturbance)
-                    for (GlobalConstraint<V, T> constraint : globalConstraints()) {
-                        if (constraint.inConflict(assignment, variable.getInitialAssignment())) {
-                            hasPerturbance = true;
-                            break;
-                        }
-                    }
-                if (hasPerturbance)
+                if (isInitialValueInConflict(assignment, variable))
                     perturbances.add(variable);
             }
         }
         return perturbances;
     }
+    
+    /**
+     * True if the initial value of the given unassigned variable is in a conflict with the given assignment (the
+     * variable is a perturbation variable then)
+     * @param assignment current assignment
+     * @param variable a variable with an initial value
+     * @return true if the initial value is in a conflict with a hard constraint or a global constraint
+     */
+    protected boolean isInitialValueInConflict(Assignment<V, T> assignment, V variable) {
+        for (Constraint<V, T> constraint : variable.hardConstraints()) {
+            if (constraint.inConflict(assignment, variable.getInitialAssignment()))
+                return true;
+        }
+        for (GlobalConstraint<V, T> constraint : globalConstraints()) {
+            if (constraint.inConflict(assignment, variable.getInitialAssignment()))
+                return true;
+        }
+        return false;
+    }
 
     /**
      * Returns the set of conflicting variables with this value, if it is
@@ -408,11 +458,23 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
      */
     public Set<T> conflictValues(Assignment<V, T> assignment, T value) {
         Set<T> conflictValues = new HashSet<T>();
+        computeConflicts(assignment, value, conflictValues);
+        return conflictValues;
+    }
+    
+    /**
+     * Computes the set of conflicting values with this value, if it is assigned to its variable, into the given set.
+     * Unlike {@link Model#conflictValues(Assignment, Value)}, no new set is created, so that a set can be reused
+     * between calls (e.g., see {@link ConflictSet#acquire()}).
+     * @param assignment current assignment
+     * @param value a value to be assigned
+     * @param conflicts resultant set of conflicting values, i.e., values that would have to be unassigned if the given value is assigned to its variable
+     */
+    public void computeConflicts(Assignment<V, T> assignment, T value, Set<T> conflicts) {
         for (Constraint<V, T> constraint : value.variable().hardConstraints())
-            constraint.computeConflicts(assignment, value, conflictValues);
+            constraint.computeConflicts(assignment, value, conflicts);
         for (GlobalConstraint<V, T> constraint : globalConstraints())
-            constraint.computeConflicts(assignment, value, conflictValues);
-        return conflictValues;
+            constraint.computeConflicts(assignment, value, conflicts);
     }
 
     /**
@@ -472,6 +534,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         iVariablesWithInitialValueLock.writeLock().lock();
         iVariablesWithInitialValueCache = null;
         iVariablesWithInitialValueLock.writeLock().unlock();
+        invalidatePerturbations();
     }
     
     /** Called before a value is assigned to its variable
@@ -527,6 +590,10 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
      **/
     public void afterAssigned(Assignment<V, T> assignment,  long iteration, T value) {
         afterAssigned(iteration, value);
+        BestJournal<V, T> journal = iBestJournal;
+        if (journal != null && journal.getAssignment() == assignment)
+            journal.changed(value.variable());
+        iPerturbVariables.getContext(assignment).changed(assignment, value.variable());
         for (ModelListener<V, T> listener : iModelListeners)
             listener.afterAssigned(assignment, iteration, value);
     }
@@ -546,6 +613,10 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
      **/
     public void afterUnassigned(Assignment<V, T> assignment, long iteration, T value) {
         afterUnassigned(iteration, value);
+        BestJournal<V, T> journal = iBestJournal;
+        if (journal != null && journal.getAssignment() == assignment)
+            journal.changed(value.variable());
+        iPerturbVariables.getContext(assignment).changed(assignment, value.variable());
         for (ModelListener<V, T> listener : iModelListeners)
             listener.afterUnassigned(assignment, iteration, value);
     }
@@ -613,8 +684,8 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         ret.put("Assigned variables", getPercRev(assignment.nrAssignedVariables(), 0, variables().size()) + "% (" + assignment.nrAssignedVariables() + "/" + variables().size() + ")");
         int nrVarsWithInitialValue = variablesWithInitialValue().size();
         if (nrVarsWithInitialValue > 0) {
-            Collection<V> pv = perturbVariables(assignment);
-            ret.put("Perturbation variables", getPercRev(pv.size(), 0, nrVarsWithInitialValue) + "% (" + pv.size() + " + " + (variables().size() - nrVarsWithInitialValue) + ")");
+            int pv = countPerturbVariables(assignment);
+            ret.put("Perturbation variables", getPercRev(pv, 0, nrVarsWithInitialValue) + "% (" + pv + " + " + (variables().size() - nrVarsWithInitialValue) + ")");
         }
         ret.put("Overall solution value", sDoubleFormat.format(getTotalValue(assignment)));
         for (InfoProvider<V, T> provider : iInfoProviders)
@@ -755,15 +826,24 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         saveBest(getDefaultAssignment());
     }
 
-    /** Save the current assignment as the best ever found assignment 
+    /** Save the current assignment as the best ever found assignment.
+     * When the best assignment was saved from the same assignment the last time, only variables
+     * that have changed since then are updated (see {@link BestJournal}).
      * @param assignment current assignment 
      **/
     public void saveBest(Assignment<V, T> assignment) {
         iBestUnassignedVariables = iVariables.size() - assignment.nrAssignedVariables();
-        iBestPerturbations = perturbVariables(assignment).size();
+        iBestPerturbations = countPerturbVariables(assignment);
         iBestValue = getTotalValue(assignment);
-        for (V variable : iVariables) {
-            variable.setBestAssignment(assignment.getValue(variable), assignment.getIteration(variable));
+        BestJournal<V, T> journal = iBestJournal;
+        if (journal != null && journal.getAssignment() == assignment) {
+            for (V variable : journal.flush())
+                variable.setBestAssignment(assignment.getValue(variable), assignment.getIteration(variable));
+        } else {
+            iBestJournal = new BestJournal<V, T>(assignment);
+            for (V variable : iVariables) {
+                variable.setBestAssignment(assignment.getValue(variable), assignment.getIteration(variable));
+            }
         }
         for (Criterion<V, T> criterion: getCriteria()) {
             criterion.bestSaved(assignment);
@@ -772,6 +852,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
 
     /** Clear the best ever found assignment */
     public void clearBest() {
+        iBestJournal = null;
         iBestUnassignedVariables = -1;
         iBestPerturbations = 0;
         iBestValue = 0;
@@ -789,14 +870,18 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         restoreBest(getDefaultAssignment());
     }
 
-    /** Restore the best ever found assignment into the current assignment
+    /** Restore the best ever found assignment into the current assignment.
+     * When the best assignment was saved from the given assignment, only variables
+     * that have changed since then are considered (see {@link BestJournal}).
      * @param assignment current assignment
      * @param assignmentOrder assignment order of the variables 
      **/
     @SuppressWarnings("unchecked")
     protected void restoreBest(Assignment<V, T> assignment, Comparator<V> assignmentOrder) {
+        BestJournal<V, T> journal = iBestJournal;
+        Collection<V> variables = (journal != null && journal.getAssignment() == assignment ? journal.flush() : iVariables);
         TreeSet<V> sortedVariables = new TreeSet<V>(assignmentOrder);
-        for (V variable : iVariables) {
+        for (V variable : variables) {
             T value = assignment.getValue(variable);
             if (value == null) {
                 if (variable.getBestAssignment() != null)
@@ -808,74 +893,84 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
             }
         }
         Set<T> problems = new HashSet<T>();
-        for (V variable : sortedVariables) {
-            Set<T> confs = conflictValues(assignment, variable.getBestAssignment());
-            if (!confs.isEmpty()) {
-                sLogger.error("restore best problem: assignment " + variable.getName() + " = " + variable.getBestAssignment().getName());
-                boolean weakened = false;
-                for (Constraint<V, T> c : variable.hardConstraints()) {
-                    Set<T> x = new HashSet<T>();
-                    c.computeConflicts(assignment, variable.getBestAssignment(), x);
-                    if (!x.isEmpty()) {
-                        if (c instanceof WeakeningConstraint) {
-                            ((WeakeningConstraint<V, T>)c).weaken(assignment, variable.getBestAssignment());
-                            sLogger.info("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " had to be weakened");
-                            weakened = true;
-                        } else {
-                            sLogger.error("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " causes the following conflicts " + x);
+        ConflictSet<T> confs = ConflictSet.acquire();
+        try {
+            for (V variable : sortedVariables) {
+                confs.clear();
+                computeConflicts(assignment, variable.getBestAssignment(), confs);
+                if (!confs.isEmpty()) {
+                    sLogger.error("restore best problem: assignment " + variable.getName() + " = " + variable.getBestAssignment().getName());
+                    boolean weakened = false;
+                    for (Constraint<V, T> c : variable.hardConstraints()) {
+                        Set<T> x = new HashSet<T>();
+                        c.computeConflicts(assignment, variable.getBestAssignment(), x);
+                        if (!x.isEmpty()) {
+                            if (c instanceof WeakeningConstraint) {
+                                ((WeakeningConstraint<V, T>)c).weaken(assignment, variable.getBestAssignment());
+                                sLogger.info("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " had to be weakened");
+                                weakened = true;
+                            } else {
+                                sLogger.error("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " causes the following conflicts " + x);
+                            }
                         }
                     }
-                }
-                for (GlobalConstraint<V, T> c : globalConstraints()) {
-                    Set<T> x = new HashSet<T>();
-                    c.computeConflicts(assignment, variable.getBestAssignment(), x);
-                    if (!x.isEmpty()) {
-                        if (c instanceof WeakeningConstraint) {
-                            ((WeakeningConstraint<V, T>)c).weaken(assignment, variable.getBestAssignment());
-                            sLogger.info("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " had to be weakened");
-                            weakened = true;
-                        } else {
-                            sLogger.error("  global constraint " + c.getClass().getSimpleName() + " " + c.getName() + " causes the following conflicts " + x);
+                    for (GlobalConstraint<V, T> c : globalConstraints()) {
+                        Set<T> x = new HashSet<T>();
+                        c.computeConflicts(assignment, variable.getBestAssignment(), x);
+                        if (!x.isEmpty()) {
+                            if (c instanceof WeakeningConstraint) {
+                                ((WeakeningConstraint<V, T>)c).weaken(assignment, variable.getBestAssignment());
+                                sLogger.info("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " had to be weakened");
+                                weakened = true;
+                            } else {
+                                sLogger.error("  global constraint " + c.getClass().getSimpleName() + " " + c.getName() + " causes the following conflicts " + x);
+                            }
                         }
                     }
-                }
-                if (weakened && conflictValues(assignment, variable.getBestAssignment()).isEmpty())
+                    if (weakened && conflictValues(assignment, variable.getBestAssignment()).isEmpty())
+                        assignment.assign(0, variable.getBestAssignment());
+                    else
+                        problems.add(variable.getBestAssignment());
+                } else
                     assignment.assign(0, variable.getBestAssignment());
-                else
-                    problems.add(variable.getBestAssignment());
-            } else
-                assignment.assign(0, variable.getBestAssignment());
-        }
-        int attempt = 0, maxAttempts = 3 * problems.size();
-        while (!problems.isEmpty() && attempt <= maxAttempts) {
-            attempt++;
-            T value = ToolBox.random(problems);
-            problems.remove(value);
-            V variable = value.variable();
-            Set<T> confs = conflictValues(assignment, value);
-            if (!confs.isEmpty()) {
-                sLogger.error("restore best problem (again, att=" + attempt + "): assignment " + variable.getName() + " = " + value.getName());
-                for (Constraint<V, T> c : variable.hardConstraints()) {
-                    Set<T> x = new HashSet<T>();
-                    c.computeConflicts(assignment, value, x);
-                    if (!x.isEmpty())
-                        sLogger.error("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " causes the following conflicts " + x);
-                }
-                for (GlobalConstraint<V, T> c : globalConstraints()) {
-                    Set<T> x = new HashSet<T>();
-                    c.computeConflicts(assignment, value, x);
-                    if (!x.isEmpty())
-                        sLogger.error("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " causes the following conflicts " + x);
+            }
+            int attempt = 0, maxAttempts = 3 * problems.size();
+            while (!problems.isEmpty() && attempt <= maxAttempts) {
+                attempt++;
+                T value = ToolBox.random(problems);
+                problems.remove(value);
+                V variable = value.variable();
+                confs.clear();
+                computeConflicts(assignment, value, confs);
+                if (!confs.isEmpty()) {
+                    sLogger.error("restore best problem (again, att=" + attempt + "): assignment " + variable.getName() + " = " + value.getName());
+                    for (Constraint<V, T> c : variable.hardConstraints()) {
+                        Set<T> x = new HashSet<T>();
+                        c.computeConflicts(assignment, value, x);
+                        if (!x.isEmpty())
+                            sLogger.error("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " causes the following conflicts " + x);
+                    }
+                    for (GlobalConstraint<V, T> c : globalConstraints()) {
+                        Set<T> x = new HashSet<T>();
+                        c.computeConflicts(assignment, value, x);
+                        if (!x.isEmpty())
+                            sLogger.error("  constraint " + c.getClass().getSimpleName() + " " + c.getName() + " causes the following conflicts " + x);
+                    }
+                    for (T conf : confs)
+                        assignment.unassign(0, conf.variable());
+                    problems.addAll(confs);
                 }
-                for (T conf : confs)
-                    assignment.unassign(0, conf.variable());
-                problems.addAll(confs);
+                assignment.assign(0, value);
             }
-            assignment.assign(0, value);
+        } finally {
+            confs.release();
         }
         for (Criterion<V, T> criterion: getCriteria()) {
             criterion.bestRestored(assignment);
         }
+        // criteria may have reset their values, recompute the running total when needed
+        if (!getCriteria().isEmpty())
+            getTotalValueContext(assignment).invalidate();
     }
     
     /** Restore the best ever found assignment into the current assignment
@@ -940,15 +1035,32 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
      * @return solution value
      */
     public double getTotalValue(Assignment<V, T> assignment) {
+        if (!getCriteria().isEmpty())
+            return getTotalValueContext(assignment).getTotalValue(assignment);
         double ret = 0.0;
-        if (getCriteria().isEmpty())
-            for (T t: assignment.assignedValues())
-                ret += t.toDouble(assignment);
-        else
-            for (Criterion<V, T> c: getCriteria())
-                ret += c.getWeightedValue(assignment);
+        for (T t: assignment.assignedValues())
+            ret += t.toDouble(assignment);
         return ret;
     }
+    
+    /**
+     * Running total of the weighted values of the criteria that are updated incrementally (see {@link AbstractCriterion#isValueIncremental()})
+     * for the given assignment. The incremental criteria are expected to call {@link TotalValueContext#inc(double)} with the weighted
+     * change of their value.
+     * @param assignment current assignment
+     * @return running total of the weighted criteria values
+     */
+    public TotalValueContext getTotalValueContext(Assignment<V, T> assignment) {
+        return iTotalValue.getContext(assignment);
+    }
+    
+    /**
+     * Invalidate running totals of all assignments (see {@link Model#getTotalValueContext(Assignment)}), e.g., because
+     * a criterion was added or removed or its weight has changed. The totals are recomputed on their next use.
+     */
+    public void invalidateTotalValue() {
+        iTotalValueVersion++;
+    }
 
     /**
      * Value of the current solution. It is the sum of all assigned values,
@@ -1104,6 +1216,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         iCriteria.put(criterion.getClass().getName(), criterion);
         criterion.setModel(this);
         addModelListener(criterion);
+        invalidateTotalValue();
     }
     
     /** Unregister an existing criterion
@@ -1113,6 +1226,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         iCriteria.remove(criterion.getClass().getName());
         criterion.setModel(null);
         removeModelListener(criterion);
+        invalidateTotalValue();
     }
     
     /** Unregister an existing criterion
@@ -1122,6 +1236,7 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
         Criterion<V,T> c = iCriteria.remove(criterion.getName());
         if (c != null)
             removeModelListener(c);
+        invalidateTotalValue();
     }
 
     /** Return a registered criterion of the given type. 
@@ -1249,4 +1364,353 @@ public class Model<V extends Variable<V, T>, T extends Value<V, T>> {
     public InheritedAssignment<V, T> createInheritedAssignment(Solution<V, T> solution, int index) {
         return new DefaultInheritedAssignment<V, T>(solution, index);
     }
+    
+    /**
+     * Journal of variables that have changed in the assignment from which the best solution was saved last.
+     * Since the best assignment is equal to this assignment for all the other variables,
+     * {@link Model#saveBest(Assignment)} and {@link Model#restoreBest(Assignment, Comparator)} only need
+     * to consider the changed variables. The journal is only updated by the thread owning the assignment;
+     * a new journal is created when the best solution is saved from a different assignment.
+     *
+     * @param <V> Variable
+     * @param <T> Value
+     */
+    protected static class BestJournal<V extends Variable<V, T>, T extends Value<V, T>> {
+        private Assignment<V, T> iAssignment;
+        private Set<V> iChanged = new HashSet<V>();
+        
+        /**
+         * Constructor
+         * @param assignment assignment from which the best solution was saved
+         */
+        public BestJournal(Assignment<V, T> assignment) {
+            iAssignment = assignment;
+        }
+        
+        /**
+         * Assignment from which the best solution was saved
+         * @return journal assignment
+         */
+        public Assignment<V, T> getAssignment() {
+            return iAssignment;
+        }
+        
+        /**
+         * Record a change of a variable
+         * @param variable a variable that has been assigned or unassigned
+         */
+        public void changed(V variable) {
+            iChanged.add(variable);
+        }
+        
+        /**
+         * Return the variables that have changed since the last call and start a new journal
+         * @return changed variables
+         */
+        public Collection<V> flush() {
+            Set<V> changed = iChanged;
+            iChanged = new HashSet<V>();
+            return changed;
+        }
+    }
+    
+    /**
+     * Holder of the running totals of the weighted criteria values, one {@link TotalValueContext} for each assignment.
+     */
+    protected class TotalValue implements HasAssignmentContext<V, T, TotalValueContext>, CanHoldContext {
+        private AssignmentContextReference<V, T, TotalValueContext> iReference = null;
+        private AssignmentContext[] iContext = new AssignmentContext[CanHoldContext.sMaxSize];
+
+        @Override
+        public TotalValueContext getContext(Assignment<V, T> assignment) {
+            return AssignmentContextHelper.getContext(this, assignment);
+        }
+
+        @Override
+        public TotalValueContext createAssignmentContext(Assignment<V, T> assignment) {
+            return new TotalValueContext(assignment);
+        }
+
+        @Override
+        public AssignmentContextReference<V, T, TotalValueContext> getAssignmentContextReference() {
+            return iReference;
+        }
+
+        @Override
+        public void setAssignmentContextReference(AssignmentContextReference<V, T, TotalValueContext> reference) {
+            iReference = reference;
+        }
+
+        @Override
+        public AssignmentContext[] getContext() {
+            return iContext;
+        }
+    }
+    
+    /**
+     * Running total of the weighted values of the incrementally updated criteria for an assignment. Other criteria are
+     * summed up on each call of {@link TotalValueContext#getTotalValue(Assignment)}. The total is recomputed when the criteria
+     * or their weights change (see {@link Model#invalidateTotalValue()}) and it is checked against a full recomputation
+     * periodically (or on every call when a criterion is in the debug mode, see {@link AbstractCriterion#isDebug()}).
+     */
+    public class TotalValueContext implements AssignmentContext {
+        private double iTotal = 0.0;
+        private int iVersion = -1;
+        private int iCalls = 0;
+        private boolean iDebug = false;
+        private List<Criterion<V, T>> iOtherCriteria = new ArrayList<Criterion<V, T>>();
+        
+        /**
+         * Create the running total for the given assignment
+         * @param assignment current assignment
+         */
+        public TotalValueContext(Assignment<V, T> assignment) {
+            recompute(assignment);
+        }
+        
+        /**
+         * Recompute the running total from the current values of the criteria
+         * @param assignment current assignment
+         */
+        protected void recompute(Assignment<V, T> assignment) {
+            iVersion = iTotalValueVersion;
+            iTotal = 0.0; iCalls = 0; iDebug = false;
+            List<Criterion<V, T>> other = new ArrayList<Criterion<V, T>>();
+            for (Criterion<V, T> criterion: getCriteria()) {
+                if (criterion instanceof AbstractCriterion && ((AbstractCriterion<V, T>)criterion).isValueIncremental()) {
+                    iTotal += criterion.getWeightedValue(assignment);
+                    if (((AbstractCriterion<V, T>)criterion).isDebug()) iDebug = true;
+                } else {
+                    other.add(criterion);
+                }
+            }
+            iOtherCriteria = other;
+        }
+        
+        /**
+         * Increment the running total
+         * @param weightedValue weighted change of a criterion value
+         */
+        public void inc(double weightedValue) {
+            iTotal += weightedValue;
+        }
+        
+        /**
+         * Mark the running total as out of date, it will be recomputed on the next call of {@link TotalValueContext#getTotalValue(Assignment)}
+         */
+        public void invalidate() {
+            iVersion = -1;
+        }
+        
+        /**
+         * Overall solution value, i.e., the weighted sum of all criteria
+         * @param assignment current assignment
+         * @return solution value
+         */
+        public double getTotalValue(Assignment<V, T> assignment) {
+            if (iVersion != iTotalValueVersion) {
+                recompute(assignment);
+            } else if (iDebug || ++iCalls >= sTotalValueCheckPeriod) {
+                double total = iTotal;
+                recompute(assignment);
+                if (Math.abs(total - iTotal) > 1e-6 * Math.max(1.0, Math.abs(iTotal))) {
+                    if (iDebug)
+                        sLogger.warn("Total value does not match: running total " + total + ", recomputed " + iTotal + ".");
+                    else
+                        sLogger.debug("Total value drifted: running total " + total + ", recomputed " + iTotal + ".");
+                }
+            }
+            double ret = iTotal;
+            for (Criterion<V, T> criterion: iOtherCriteria)
+                ret += criterion.getWeightedValue(assignment);
+            return ret;
+        }
+    }
+    
+    /**
+     * Holder of the tracked perturbation variables, one {@link PerturbVariablesContext} for each assignment.
+     */
+    protected class PerturbVariables implements HasAssignmentContext<V, T, PerturbVariablesContext>, CanHoldContext {
+        private AssignmentContextReference<V, T, PerturbVariablesContext> iReference = null;
+        private AssignmentContext[] iContext = new AssignmentContext[CanHoldContext.sMaxSize];
+
+        @Override
+        public PerturbVariablesContext getContext(Assignment<V, T> assignment) {
+            return AssignmentContextHelper.getContext(this, assignment);
+        }
+
+        @Override
+        public PerturbVariablesContext createAssignmentContext(Assignment<V, T> assignment) {
+            return new PerturbVariablesContext(assignment);
+        }
+
+        @Override
+        public AssignmentContextReference<V, T, PerturbVariablesContext> getAssignmentContextReference() {
+            return iReference;
+        }
+
+        @Override
+        public void setAssignmentContextReference(AssignmentContextReference<V, T, PerturbVariablesContext> reference) {
+            iReference = reference;
+        }
+
+        @Override
+        public AssignmentContext[] getContext() {
+            return iContext;
+        }
+    }
+    
+    /**
+     * Perturbation variables of an assignment (see {@link Model#perturbVariables(Assignment)}), updated incrementally.
+     * An assigned variable with an initial value is updated when it is changed. An unassigned variable with an initial value
+     * is a perturbation when its initial value is in a conflict, this is only rechecked (lazily, on the next query) when a
+     * variable sharing a hard constraint with it is changed. When there are global constraints, any change only raises a flag
+     * and all the unassigned variables with an initial value are rechecked on the next query.
+     * Everything is recomputed when the variables with an initial value or the constraints of the model change
+     * (see {@link Model#invalidatePerturbations()}).
+     */
+    public class PerturbVariablesContext implements AssignmentContext {
+        private int iVersion = -1;
+        private boolean iEmpty = true;
+        private boolean iGlobal = false;
+        private volatile boolean iAllDirty = false;
+        private List<V> iPerturbations = new ArrayList<V>();
+        private Map<V, Integer> iPosition = new HashMap<V, Integer>();
+        private Set<V> iUnassigned = new HashSet<V>();
+        private Set<V> iDirty = new HashSet<V>();
+        
+        /**
+         * Compute perturbation variables of the given assignment
+         * @param assignment current assignment
+         */
+        public PerturbVariablesContext(Assignment<V, T> assignment) {
+            recompute(assignment);
+        }
+        
+        /**
+         * Recompute perturbation variables from scratch, initial values of the unassigned variables are checked lazily
+         * @param assignment current assignment
+         */
+        protected void recompute(Assignment<V, T> assignment) {
+            iVersion = iPerturbationsVersion;
+            iPerturbations.clear(); iPosition.clear(); iUnassigned.clear(); iDirty.clear();
+            Collection<V> variables = variablesWithInitialValue();
+            iEmpty = variables.isEmpty();
+            iGlobal = !globalConstraints().isEmpty();
+            iAllDirty = false;
+            for (V variable : variables) {
+                T value = assignment.getValue(variable);
+                if (value == null) {
+                    iUnassigned.add(variable);
+                    iDirty.add(variable);
+                } else if (!variable.getInitialAssignment().equals(value)) {
+                    add(variable);
+                }
+            }
+        }
+        
+        private void add(V variable) {
+            if (!iPosition.containsKey(variable)) {
+                iPosition.put(variable, iPerturbations.size());
+                iPerturbations.add(variable);
+            }
+        }
+        
+        private void remove(V variable) {
+            Integer position = iPosition.remove(variable);
+            if (position == null) return;
+            V last = iPerturbations.remove(iPerturbations.size() - 1);
+            if (!last.equals(variable)) {
+                iPerturbations.set(position, last);
+                iPosition.put(last, position);
+            }
+        }
+        
+        /**
+         * Called after a variable was assigned or unassigned
+         * @param assignment current assignment
+         * @param variable changed variable
+         */
+        protected void changed(Assignment<V, T> assignment, V variable) {
+            if (iEmpty || iVersion != iPerturbationsVersion) return;
+            T initial = variable.getInitialAssignment();
+            if (iGlobal) {
+                // a global constraint may change the conflicts of any initial value, recheck them all on the next query
+                iAllDirty = true;
+                if (initial == null) return;
+            }
+            synchronized (this) {
+                if (initial != null) {
+                    T value = assignment.getValue(variable);
+                    if (value == null) {
+                        iUnassigned.add(variable);
+                        iDirty.add(variable);
+                    } else {
+                        iUnassigned.remove(variable);
+                        iDirty.remove(variable);
+                        if (initial.equals(value))
+                            remove(variable);
+                        else
+                            add(variable);
+                    }
+                }
+                if (iGlobal || iUnassigned.isEmpty()) return;
+                for (Constraint<V, T> constraint : variable.hardConstraints())
+                    for (V other : constraint.variables())
+                        if (iUnassigned.contains(other))
+                            iDirty.add(other);
+            }
+        }
+        
+        /**
+         * Recheck the initial values of unassigned variables that may have changed
+         * @param assignment current assignment
+         */
+        protected void update(Assignment<V, T> assignment) {
+            if (iVersion != iPerturbationsVersion) recompute(assignment);
+            if (iAllDirty) {
+                iAllDirty = false;
+                iDirty.addAll(iUnassigned);
+            }
+            if (iDirty.isEmpty()) return;
+            for (V variable : iDirty) {
+                if (assignment.getValue(variable) != null) continue;
+                if (isInitialValueInConflict(assignment, variable))
+                    add(variable);
+                else
+                    remove(variable);
+            }
+            iDirty.clear();
+        }
+        
+        /**
+         * Perturbation variables
+         * @param assignment current assignment
+         * @return a copy of the list of perturbation variables
+         */
+        public synchronized List<V> getPerturbVariables(Assignment<V, T> assignment) {
+            update(assignment);
+            return new ArrayList<V>(iPerturbations);
+        }
+        
+        /**
+         * Number of perturbation variables
+         * @param assignment current assignment
+         * @return number of perturbation variables
+         */
+        public synchronized int countPerturbVariables(Assignment<V, T> assignment) {
+            update(assignment);
+            return iPerturbations.size();
+        }
+        
+        /**
+         * A random perturbation variable
+         * @param assignment current assignment
+         * @return a randomly selected perturbation variable, null if there is none
+         */
+        public synchronized V randomPerturbVariable(Assignment<V, T> assignment) {
+            update(assignment);
+            return ToolBox.random(iPerturbations);
+        }
+    }
 }
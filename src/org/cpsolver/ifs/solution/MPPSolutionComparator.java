@@ -61,7 +61,7 @@ public class MPPSolutionComparator<V extends Variable<V, T>, T extends Value<V,
         int unassigned = currentSolution.getAssignment().nrUnassignedVariables(currentSolution.getModel());
         if (currentSolution.getModel().getBestUnassignedVariables() != unassigned)
             return currentSolution.getModel().getBestUnassignedVariables() > unassigned;
-        int pert = currentSolution.getModel().perturbVariables(currentSolution.getAssignment()).size();
+        int pert = currentSolution.getModel().countPerturbVariables(currentSolution.getAssignment());
         if (currentSolution.getModel().getBestPerturbations() != pert)
             return currentSolution.getModel().getBestPerturbations() > pert;
         return currentSolution.getModel().getTotalValue(currentSolution.getAssignment()) < currentSolution.getModel().getBestValue();
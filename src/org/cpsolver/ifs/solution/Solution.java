@@ -204,6 +204,24 @@ public class Solution<V extends Variable<V, T>, T extends Value<V, T>> {
         iPerturbationsCounter = solver.getPerturbationsCounter();
     }
 
+    /**
+     * Set the current iteration, number of failed iterations and solver time,
+     * e.g., when the search is resumed from a {@link SolutionCheckpoint}
+     * @param iteration current iteration
+     * @param failedIterations number of failed iterations
+     * @param time current solver time
+     */
+    public void resume(long iteration, long failedIterations, double time) {
+        iLock.writeLock().lock();
+        try {
+            iIteration = iteration;
+            iFailedIterations = failedIterations;
+            iTime = time;
+        } finally {
+            iLock.writeLock().unlock();
+        }
+    }
+
     /**
      * String representation -- returns a list of values of objective criteria
      * @return comma separated string of {@link TimetablingCriterion#toString(Assignment)}
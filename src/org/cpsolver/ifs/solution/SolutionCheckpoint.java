@@ -0,0 +1,554 @@
+package org.cpsolver.ifs.solution;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.cpsolver.ifs.assignment.Assignment;
+import org.cpsolver.ifs.assignment.EmptyAssignment;
+import org.cpsolver.ifs.criteria.Criterion;
+import org.cpsolver.ifs.model.Model;
+import org.cpsolver.ifs.model.Value;
+import org.cpsolver.ifs.model.Variable;
+import org.cpsolver.ifs.util.DataProperties;
+
+
+/**
+ * Binary checkpoint of a running solution. <br>
+ * <br>
+ * The checkpoint contains the current and the best assignment, both stored as
+ * an array of value indexes (index of the assigned value in the domain of the
+ * variable, -1 when not assigned), the current and the best iteration and
+ * solver time, and the best values of all the criteria. It is written
+ * periodically by a background thread, the thread only takes the solution read
+ * lock while the assignment is being copied. Each checkpoint is first written
+ * into a temporary file which then replaces the previous checkpoint, so that
+ * there is always a complete checkpoint available, even when the JVM crashes.
+ * <br>
+ * <br>
+ * Resuming from a checkpoint skips the loading of the solution (e.g., from an
+ * XML file): the model is still to be created, but the checkpoint is only used
+ * when the model has the same variables and the input file
+ * (General.Input) has not changed since the checkpoint was taken. The value
+ * indexes are taken from the domain of the variable, computed with an empty
+ * assignment. So, the checkpoint is only suitable for problems where the
+ * domains do not depend on the current assignment (e.g., course or examination
+ * timetabling). <br>
+ * <br>
+ * Parameters:
+ * <table border='1' summary='Related Solver Parameters'>
+ * <tr>
+ * <th>Parameter</th>
+ * <th>Type</th>
+ * <th>Comment</th>
+ * </tr>
+ * <tr>
+ * <td>Checkpoint.File</td>
+ * <td>{@link String}</td>
+ * <td>Checkpoint file, checkpoints are enabled when set</td>
+ * </tr>
+ * <tr>
+ * <td>Checkpoint.Interval</td>
+ * <td>{@link Integer}</td>
+ * <td>Interval between two checkpoints in seconds (defaults to 300). A checkpoint
+ * is only written when the solution has changed.</td>
+ * </tr>
+ * <tr>
+ * <td>Checkpoint.Resume</td>
+ * <td>{@link Boolean}</td>
+ * <td>Resume from the checkpoint file when it exists (defaults to true)</td>
+ * </tr>
+ * </table>
+ *
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ *
+ * @param <V> Variable
+ * @param <T> Value
+ */
+public class SolutionCheckpoint<V extends Variable<V, T>, T extends Value<V, T>> implements SolutionListener<V, T> {
+    private static org.apache.log4j.Logger sLogger = org.apache.log4j.Logger.getLogger(SolutionCheckpoint.class);
+    private static final int sMagic = 0x49465343; // IFSC
+    private static final int sVersion = 1;
+    private File iFile;
+    private File iInput;
+    private long iInterval;
+    private boolean iResume;
+    private Long iSignature = null;
+    private int[] iHints = null;
+    private Solution<V, T> iSolution = null;
+    private volatile boolean iChanged = false;
+    private CheckpointThread iThread = null;
+
+    /**
+     * Constructor
+     * @param properties solver configuration
+     */
+    public SolutionCheckpoint(DataProperties properties) {
+        iFile = new File(properties.getProperty("Checkpoint.File"));
+        String input = properties.getProperty("General.Input");
+        iInput = (input == null ? null : new File(input));
+        iInterval = 1000l * properties.getPropertyInt("Checkpoint.Interval", 300);
+        iResume = properties.getPropertyBoolean("Checkpoint.Resume", true);
+    }
+
+    /**
+     * Are checkpoints enabled
+     * @param properties solver configuration
+     * @return true if Checkpoint.File is set
+     */
+    public static boolean isEnabled(DataProperties properties) {
+        return properties.getProperty("Checkpoint.File") != null;
+    }
+
+    /** Checkpoint file
+     * @return file into which the checkpoints are written
+     **/
+    public File getFile() { return iFile; }
+
+    /**
+     * Start writing checkpoints of the given solution
+     * @param solution current solution
+     */
+    public synchronized void start(Solution<V, T> solution) {
+        if (iThread != null) return;
+        iSolution = solution;
+        iChanged = false;
+        iSolution.addSolutionListener(this);
+        iThread = new CheckpointThread();
+        iThread.start();
+    }
+
+    /**
+     * Stop writing checkpoints, a last checkpoint is written when the solution
+     * has changed since the previous one
+     */
+    public void stop() {
+        CheckpointThread thread = null;
+        synchronized (this) {
+            thread = iThread;
+            if (thread == null) return;
+            iThread = null;
+            iSolution.removeSolutionListener(this);
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {}
+        if (iChanged) {
+            try {
+                save(iSolution);
+            } catch (IOException e) {
+                sLogger.error("Failed to write checkpoint " + iFile + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Model signature, the checkpoint is only used when the model has the same
+     * signature: it is computed from the variables and constraints of the model
+     * and the content of the input file (if known)
+     * @param model problem model
+     * @return model signature
+     * @throws IOException when the input file cannot be read
+     */
+    protected synchronized long getSignature(Model<V, T> model) throws IOException {
+        if (iSignature == null) {
+            long signature = model.variables().size();
+            for (V variable : model.variables())
+                signature = 31 * signature + variable.getId();
+            signature = 31 * signature + model.constraints().size();
+            signature = 31 * signature + model.globalConstraints().size();
+            if (iInput != null && iInput.isFile()) {
+                CRC32 crc = new CRC32();
+                InputStream in = new FileInputStream(iInput);
+                try {
+                    byte[] buffer = new byte[65536];
+                    int read;
+                    while ((read = in.read(buffer)) >= 0)
+                        crc.update(buffer, 0, read);
+                } finally {
+                    in.close();
+                }
+                signature = 31 * signature + crc.getValue();
+            }
+            iSignature = signature;
+        }
+        return iSignature;
+    }
+
+    /**
+     * Write a checkpoint of the given solution. The solution is only locked
+     * while its assignment is being copied.
+     * @param solution current solution
+     * @throws IOException when the checkpoint cannot be written
+     */
+    public void save(Solution<V, T> solution) throws IOException {
+        long t0 = System.currentTimeMillis();
+        Snapshot snapshot = new Snapshot(solution);
+        Model<V, T> model = solution.getModel();
+        long signature = getSignature(model);
+        File temp = new File(iFile.getAbsoluteFile().getParentFile(), iFile.getName() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(temp);
+        try {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos, 65536), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(sMagic);
+            out.writeInt(sVersion);
+            out.writeLong(signature);
+            out.writeInt(snapshot.iValues.size());
+            out.writeLong(snapshot.iIteration);
+            out.writeLong(snapshot.iFailedIterations);
+            out.writeDouble(snapshot.iTime);
+            out.writeBoolean(snapshot.iBestValues != null);
+            if (snapshot.iBestValues != null) {
+                out.writeLong(snapshot.iBestIteration);
+                out.writeLong(snapshot.iBestFailedIterations);
+                out.writeDouble(snapshot.iBestTime);
+                out.writeDouble(snapshot.iBestValue);
+                out.writeInt(snapshot.iCriteria.length);
+                for (int i = 0; i < snapshot.iCriteria.length; i++) {
+                    out.writeUTF(snapshot.iCriteria[i]);
+                    out.writeDouble(snapshot.iCriteriaBest[i]);
+                }
+            }
+            writeValues(out, model, snapshot.iValues, snapshot.iIterations, false);
+            if (snapshot.iBestValues != null)
+                writeValues(out, model, snapshot.iBestValues, snapshot.iBestIterations, true);
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!temp.renameTo(iFile)) {
+            // some platforms cannot rename over an existing file
+            if (!iFile.delete() || !temp.renameTo(iFile))
+                throw new IOException("failed to replace " + iFile + " with " + temp);
+        }
+        sLogger.debug("Checkpoint of iteration " + snapshot.iIteration + " written in " + (System.currentTimeMillis() - t0) + " ms.");
+    }
+
+    /**
+     * Write value indexes, the iteration is written for each assigned value
+     */
+    private void writeValues(DataOutputStream out, Model<V, T> model, List<T> values, long[] iterations, boolean best) throws IOException {
+        Assignment<V, T> empty = new EmptyAssignment<V, T>();
+        if (iHints == null || iHints.length != 2 * values.size()) {
+            iHints = new int[2 * values.size()];
+            Arrays.fill(iHints, -1);
+        }
+        int offset = (best ? values.size() : 0);
+        for (int i = 0; i < values.size(); i++) {
+            T value = values.get(i);
+            if (value == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            List<T> domain = value.variable().values(empty);
+            int index = iHints[offset + i];
+            if (index < 0 || index >= domain.size() || !value.equals(domain.get(index)))
+                index = domain.indexOf(value);
+            iHints[offset + i] = index;
+            out.writeInt(index);
+            if (index >= 0)
+                out.writeLong(iterations[i]);
+        }
+    }
+
+    /**
+     * Resume from the checkpoint file: the current and the best assignments,
+     * iterations, and times are restored into the given solution. Nothing is
+     * changed when there is no checkpoint, the checkpoint is not valid, or it was
+     * taken for a different model.
+     * @param solution solution to be updated
+     * @return true if the solution was resumed from the checkpoint
+     */
+    public boolean resume(Solution<V, T> solution) {
+        if (!iResume || !iFile.isFile()) return false;
+        long t0 = System.currentTimeMillis();
+        Model<V, T> model = solution.getModel();
+        Snapshot snapshot = null;
+        try {
+            snapshot = load(model);
+        } catch (IOException e) {
+            sLogger.warn("Failed to read checkpoint " + iFile + ": " + (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()));
+            return false;
+        }
+        if (snapshot == null) return false;
+        solution.getLock().writeLock().lock();
+        try {
+            Assignment<V, T> assignment = solution.getAssignment();
+            unassignAll(model, assignment);
+            if (snapshot.iBestValues != null) {
+                int failed = assign(model, assignment, snapshot.iBestValues, snapshot.iBestIterations);
+                if (failed > 0)
+                    sLogger.warn("Failed to restore " + failed + " best assignments from checkpoint " + iFile + ".");
+                solution.resume(snapshot.iBestIteration, snapshot.iBestFailedIterations, snapshot.iBestTime);
+                solution.saveBest();
+                for (int i = 0; i < snapshot.iCriteria.length; i++) {
+                    for (Criterion<V, T> criterion : model.getCriteria()) {
+                        if (criterion.getName().equals(snapshot.iCriteria[i]) && Math.abs(criterion.getBest() - snapshot.iCriteriaBest[i]) > 1e-6)
+                            sLogger.warn("Best " + criterion.getName() + " differs from checkpoint " + iFile + " (" + criterion.getBest() + " != " + snapshot.iCriteriaBest[i] + ").");
+                    }
+                }
+                unassignAll(model, assignment);
+            } else {
+                solution.clearBest();
+            }
+            int failed = assign(model, assignment, snapshot.iValues, snapshot.iIterations);
+            if (failed > 0)
+                sLogger.warn("Failed to restore " + failed + " assignments from checkpoint " + iFile + ".");
+            solution.resume(snapshot.iIteration, snapshot.iFailedIterations, snapshot.iTime);
+        } finally {
+            solution.getLock().writeLock().unlock();
+        }
+        sLogger.info("Resumed from checkpoint " + iFile + " of iteration " + snapshot.iIteration + " in " + (System.currentTimeMillis() - t0) + " ms.");
+        return true;
+    }
+
+    /**
+     * Read the checkpoint file
+     * @return checkpoint, null if it was taken for a different model
+     */
+    private Snapshot load(Model<V, T> model) throws IOException {
+        FileInputStream fis = new FileInputStream(iFile);
+        try {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fis, 65536), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != sMagic)
+                throw new IOException("not a checkpoint file");
+            int version = in.readInt();
+            if (version != sVersion)
+                throw new IOException("unsupported checkpoint version " + version);
+            if (in.readLong() != getSignature(model) || in.readInt() != model.variables().size()) {
+                sLogger.info("Checkpoint " + iFile + " was taken for a different model, ignoring.");
+                return null;
+            }
+            Snapshot snapshot = new Snapshot();
+            snapshot.iIteration = in.readLong();
+            snapshot.iFailedIterations = in.readLong();
+            snapshot.iTime = in.readDouble();
+            boolean best = in.readBoolean();
+            if (best) {
+                snapshot.iBestIteration = in.readLong();
+                snapshot.iBestFailedIterations = in.readLong();
+                snapshot.iBestTime = in.readDouble();
+                snapshot.iBestValue = in.readDouble();
+                int nrCriteria = in.readInt();
+                snapshot.iCriteria = new String[nrCriteria];
+                snapshot.iCriteriaBest = new double[nrCriteria];
+                for (int i = 0; i < nrCriteria; i++) {
+                    snapshot.iCriteria[i] = in.readUTF();
+                    snapshot.iCriteriaBest[i] = in.readDouble();
+                }
+            }
+            snapshot.iIterations = new long[model.variables().size()];
+            snapshot.iValues = readValues(in, model, snapshot.iIterations);
+            if (best) {
+                snapshot.iBestIterations = new long[model.variables().size()];
+                snapshot.iBestValues = readValues(in, model, snapshot.iBestIterations);
+            }
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum)
+                throw new IOException("checksum does not match");
+            return snapshot;
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Read value indexes
+     */
+    private List<T> readValues(DataInputStream in, Model<V, T> model, long[] iterations) throws IOException {
+        Assignment<V, T> empty = new EmptyAssignment<V, T>();
+        List<T> values = new ArrayList<T>(model.variables().size());
+        for (V variable : model.variables()) {
+            int index = in.readInt();
+            if (index < 0) {
+                values.add(null);
+                continue;
+            }
+            iterations[values.size()] = in.readLong();
+            List<T> domain = variable.values(empty);
+            if (index >= domain.size())
+                throw new IOException("value " + index + " of " + variable.getName() + " is out of its domain");
+            values.add(domain.get(index));
+        }
+        return values;
+    }
+
+    /**
+     * Unassign all variables
+     */
+    private void unassignAll(Model<V, T> model, Assignment<V, T> assignment) {
+        for (V variable : model.variables())
+            if (assignment.getValue(variable) != null)
+                assignment.unassign(0, variable);
+    }
+
+    /**
+     * Assign the given values, values that are in a conflict are skipped
+     * @return number of values that could not be assigned
+     */
+    private int assign(Model<V, T> model, Assignment<V, T> assignment, List<T> values, long[] iterations) {
+        int failed = 0;
+        for (int i = 0; i < values.size(); i++) {
+            T value = values.get(i);
+            if (value == null) continue;
+            if (model.inConflict(assignment, value))
+                failed++;
+            else
+                assignment.assign(iterations[i], value);
+        }
+        return failed;
+    }
+
+    @Override
+    public void solutionUpdated(Solution<V, T> solution) {
+        iChanged = true;
+    }
+
+    @Override
+    public void getInfo(Solution<V, T> solution, Map<String, String> info) {
+    }
+
+    @Override
+    public void getInfo(Solution<V, T> solution, Map<String, String> info, Collection<V> variables) {
+    }
+
+    @Override
+    public void bestCleared(Solution<V, T> solution) {
+        iChanged = true;
+    }
+
+    @Override
+    public void bestSaved(Solution<V, T> solution) {
+        iChanged = true;
+    }
+
+    @Override
+    public void bestRestored(Solution<V, T> solution) {
+        iChanged = true;
+    }
+
+    /**
+     * Copy of the solution state that is to be written into a checkpoint
+     */
+    private class Snapshot {
+        private long iIteration, iFailedIterations;
+        private double iTime;
+        private List<T> iValues;
+        private long[] iIterations;
+        private long iBestIteration, iBestFailedIterations;
+        private double iBestTime, iBestValue;
+        private List<T> iBestValues = null;
+        private long[] iBestIterations;
+        private String[] iCriteria;
+        private double[] iCriteriaBest;
+
+        private Snapshot() {}
+
+        private Snapshot(Solution<V, T> solution) {
+            solution.getLock().readLock().lock();
+            try {
+                Model<V, T> model = solution.getModel();
+                Assignment<V, T> assignment = solution.getAssignment();
+                List<V> variables = model.variables();
+                iIteration = solution.getIteration();
+                iFailedIterations = solution.getFailedIterations();
+                iTime = solution.getTime();
+                iValues = new ArrayList<T>(variables.size());
+                iIterations = new long[variables.size()];
+                for (V variable : variables) {
+                    T value = assignment.getValue(variable);
+                    if (value != null)
+                        iIterations[iValues.size()] = assignment.getIteration(variable);
+                    iValues.add(value);
+                }
+                if (solution.getBestInfo() != null) {
+                    iBestIteration = solution.getBestIteration();
+                    iBestFailedIterations = solution.getBestFailedIterations();
+                    iBestTime = solution.getBestTime();
+                    iBestValue = solution.getBestValue();
+                    iBestValues = new ArrayList<T>(variables.size());
+                    iBestIterations = new long[variables.size()];
+                    for (V variable : variables) {
+                        iBestIterations[iBestValues.size()] = variable.getBestAssignmentIteration();
+                        iBestValues.add(variable.getBestAssignment());
+                    }
+                    iCriteria = new String[model.getCriteria().size()];
+                    iCriteriaBest = new double[model.getCriteria().size()];
+                    int i = 0;
+                    for (Criterion<V, T> criterion : model.getCriteria()) {
+                        iCriteria[i] = criterion.getName();
+                        iCriteriaBest[i] = criterion.getBest();
+                        i++;
+                    }
+                }
+            } finally {
+                solution.getLock().readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Background thread writing the checkpoints
+     */
+    private class CheckpointThread extends Thread {
+        private CheckpointThread() {
+            setName("Checkpoint");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Thread.sleep(iInterval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!iChanged) continue;
+                iChanged = false;
+                try {
+                    save(iSolution);
+                } catch (IOException e) {
+                    sLogger.error("Failed to write checkpoint " + iFile + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
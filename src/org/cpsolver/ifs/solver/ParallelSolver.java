@@ -2,7 +2,6 @@ package org.cpsolver.ifs.solver;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -36,7 +35,9 @@ import org.cpsolver.ifs.util.ToolBox;
  * <br>
  * When {@link DefaultSingleAssignment} is given to the solver, only one solution is used.
  * A neighbour is assigned to this (shared) solution when it does not create any conflicts
- * outside of {@link Neighbour#assignments()}.
+ * outside of {@link Neighbour#assignments()}. Neighbours are selected in parallel, but they are
+ * committed one at a time under the solution write lock, since every assignment updates the
+ * criteria, the global constraints and the model contexts of the shared assignment.
  * 
  * @see Solver
  * 
@@ -209,6 +210,9 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
             
             // Finalization
             iLastSolution = iCurrentSolution;
+            if (getCheckpoint() != null)
+                getCheckpoint().stop();
+            shutdownEvaluationPool();
 
             iProgress.setPhase("Done", 1);
             iProgress.incProgress();
@@ -250,6 +254,21 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
         return iCurrentSolution.getAssignment() instanceof DefaultSingleAssignment;
     }
     
+    /**
+     * Acquire the solution lock, recording the waiting time when the solver metrics are enabled (see {@link SolverMetrics#getLockWait()})
+     * @param lock solution lock
+     */
+    protected void lockSolution(Lock lock) {
+        SolverMetrics metrics = getMetrics();
+        if (metrics == null) {
+            lock.lock();
+        } else {
+            long t0 = System.nanoTime();
+            lock.lock();
+            metrics.getLockWait().waited(System.nanoTime() - t0);
+        }
+    }
+    
     /**
      * Solver thread
      */
@@ -273,7 +292,8 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
         
         @Override
         public void run() {
-            iStartTime = JProf.currentTimeSec();
+            iStartTime = JProf.currentTimeSec() - iCurrentSolution.getTime();
+            ToolBox.setSeed(ToolBox.getSeed(), iIndex);
             try {
                 boolean neighbourCheck = getProperties().getPropertyBoolean("ParallelSolver.SingleSolutionNeighbourCheck", false);
                 boolean tryLazyFirst = getProperties().getPropertyBoolean("ParallelSolver.SingleSolutionTryLazyFirst", false);
@@ -368,7 +388,7 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
                         
                         // Assign selected value to the selected variable
                         Lock lock = iSolution.getLock().writeLock();
-                        lock.lock();
+                        lockSolution(lock);
                         try {
                             LazyNeighbourAcceptanceCriterion<V,T> lazy = null;
                             double before = 0, value = 0;
@@ -379,34 +399,33 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
                                 before = iSolution.getModel().getTotalValue(iSolution.getAssignment());
                                 value = neighbour.value(current.getAssignment());
                             }
-                            Map<V, T> undo = new HashMap<V, T>();
-                            for (V var: assignments.keySet())
-                                undo.put(var, iSolution.getAssignment().unassign(iSolution.getIteration(), var));
+                            int savepoint = iSolution.getAssignment().savepoint();
                             boolean fail = false;
-                            for (T val: assignments.values()) {
-                                if (val == null) continue;
-                                if (iModel.inConflict(iSolution.getAssignment(), val)) {
-                                    fail = true; break;
+                            try {
+                                for (V var: assignments.keySet())
+                                    iSolution.getAssignment().unassign(iSolution.getIteration(), var);
+                                for (T val: assignments.values()) {
+                                    if (val == null) continue;
+                                    if (iModel.inConflict(iSolution.getAssignment(), val)) {
+                                        fail = true; break;
+                                    }
+                                    iSolution.getAssignment().assign(iSolution.getIteration(), val);
                                 }
-                                iSolution.getAssignment().assign(iSolution.getIteration(), val);
-                            }
-                            if (!fail) {
-                                if (lazy != null) {
-                                    double after = iSolution.getModel().getTotalValue(iSolution.getAssignment());
-                                    if (!lazy.accept(iSolution.getAssignment(), (LazyNeighbour<V, T>) neighbour, after - before))
-                                        fail = true;
-                                } else if (neighbourCheck) {
-                                    double after = iSolution.getModel().getTotalValue(iSolution.getAssignment());
-                                    if (before + value < after && before < after && !getSolutionComparator().isBetterThanBestSolution(iSolution))
-                                        fail = true;
+                                if (!fail) {
+                                    if (lazy != null) {
+                                        double after = iSolution.getModel().getTotalValue(iSolution.getAssignment());
+                                        if (!lazy.accept(iSolution.getAssignment(), (LazyNeighbour<V, T>) neighbour, after - before))
+                                            fail = true;
+                                    } else if (neighbourCheck) {
+                                        double after = iSolution.getModel().getTotalValue(iSolution.getAssignment());
+                                        if (before + value < after && before < after && !getSolutionComparator().isBetterThanBestSolution(iSolution))
+                                            fail = true;
+                                    }
                                 }
-                            }
-                            if (fail) {
-                                for (V var: undo.keySet())
-                                    iSolution.getAssignment().unassign(iSolution.getIteration(), var);
-                                for (T val: undo.values())
-                                    if (val != null)
-                                        iSolution.getAssignment().assign(iSolution.getIteration(), val);
+                                if (fail)
+                                    iSolution.getAssignment().rollback(savepoint);
+                            } finally {
+                                iSolution.getAssignment().release(savepoint);
                             }
                             iSolution.update(time, !fail);
                             if (fail) {
@@ -426,7 +445,7 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
                     } else {
                         // Assign selected value to the selected variable
                         Lock lock = iSolution.getLock().writeLock();
-                        lock.lock();
+                        lockSolution(lock);
                         try {
                             neighbour.assign(iAssignment, iSolution.getIteration());
                             iSolution.update(time, currentSolution());
@@ -477,7 +496,8 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
         
         @Override
         public void run() {
-            iStartTime = JProf.currentTimeSec();
+            iStartTime = JProf.currentTimeSec() - iCurrentSolution.getTime();
+            ToolBox.setSeed(ToolBox.getSeed(), 0);
             try {
                 boolean neighbourCheck = getProperties().getPropertyBoolean("ParallelSolver.SingleSolutionNeighbourCheck", false);
                 
@@ -507,7 +527,7 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
                     
                     // Assign selected value to the selected variable
                     Lock lock = iSolution.getLock().writeLock();
-                    lock.lock();
+                    lockSolution(lock);
                     try {
                         LazyNeighbourAcceptanceCriterion<V,T> lazy = null;
                         double before = 0, value = 0;
@@ -518,34 +538,33 @@ public class ParallelSolver<V extends Variable<V, T>, T extends Value<V, T>> ext
                             before = iSolution.getModel().getTotalValue(iSolution.getAssignment());
                             value = neighbour.value(iSolution.getAssignment());
                         }
-                        Map<V, T> undo = new HashMap<V, T>();
-                        for (V var: assignments.keySet())
-                            undo.put(var, iSolution.getAssignment().unassign(iSolution.getIteration(), var));
+                        int savepoint = iSolution.getAssignment().savepoint();
                         boolean fail = false;
-                        for (T val: assignments.values()) {
-                            if (val == null) continue;
-                            if (iSolution.getModel().inConflict(iSolution.getAssignment(), val)) {
-                                fail = true; break;
+                        try {
+                            for (V var: assignments.keySet())
+                                iSolution.getAssignment().unassign(iSolution.getIteration(), var);
+                            for (T val: assignments.values()) {
+                                if (val == null) continue;
+                                if (iSolution.getModel().inConflict(iSolution.getAssignment(), val)) {
+                                    fail = true; break;
+                                }
+                                iSolution.getAssignment().assign(iSolution.getIteration(), val);
                             }
-                            iSolution.getAssignment().assign(iSolution.getIteration(), val);
-                        }
-                        if (!fail) {
-                            if (lazy != null) {
-                                double after = iSolution.getModel().getTotalValue(iSolution.getAssignment());
-                                if (!lazy.accept(iSolution.getAssignment(), (LazyNeighbour<V, T>) neighbour, after - before))
-                                    fail = true;
-                            } else if (neighbourCheck) {
-                                double after = iSolution.getModel().getTotalValue(iSolution.getAssignment());
-                                if (before + value < after && before < after && !getSolutionComparator().isBetterThanBestSolution(iSolution))
-                                    fail = true;
+                            if (!fail) {
+                                if (lazy != null) {
+                                    double after = iSolution.getModel().getTotalValue(iSolution.getAssignment());
+                                    if (!lazy.accept(iSolution.getAssignment(), (LazyNeighbour<V, T>) neighbour, after - before))
+                                        fail = true;
+                                } else if (neighbourCheck) {
+                                    double after = iSolution.getModel().getTotalValue(iSolution.getAssignment());
+                                    if (before + value < after && before < after && !getSolutionComparator().isBetterThanBestSolution(iSolution))
+                                        fail = true;
+                                }
                             }
-                        }
-                        if (fail) {
-                            for (V var: undo.keySet())
-                                iSolution.getAssignment().unassign(iSolution.getIteration(), var);
-                            for (T val: undo.values())
-                                if (val != null)
-                                    iSolution.getAssignment().assign(iSolution.getIteration(), val);
+                            if (fail)
+                                iSolution.getAssignment().rollback(savepoint);
+                        } finally {
+                            iSolution.getAssignment().release(savepoint);
                         }
                         iSolution.update(time, !fail);
                         if (fail) {
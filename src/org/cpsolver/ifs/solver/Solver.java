@@ -7,6 +7,12 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 
 import org.cpsolver.ifs.assignment.DefaultSingleAssignment;
@@ -25,6 +31,7 @@ import org.cpsolver.ifs.perturbations.DefaultPerturbationsCounter;
 import org.cpsolver.ifs.perturbations.PerturbationsCounter;
 import org.cpsolver.ifs.solution.GeneralSolutionComparator;
 import org.cpsolver.ifs.solution.Solution;
+import org.cpsolver.ifs.solution.SolutionCheckpoint;
 import org.cpsolver.ifs.solution.SolutionComparator;
 import org.cpsolver.ifs.termination.GeneralTerminationCondition;
 import org.cpsolver.ifs.termination.TerminationCondition;
@@ -168,6 +175,18 @@ import org.cpsolver.ifs.util.ToolBox;
  * extensions (see {@link Extension}, e.g. {@link ConflictStatistics} or
  * {@link MacPropagation})</td>
  * </tr>
+ * <tr>
+ * <td>Metrics.Enabled</td>
+ * <td>{@link Boolean}</td>
+ * <td>Collect solver telemetry, exposed via JMX (see {@link SolverMetrics})</td>
+ * </tr>
+ * <tr>
+ * <td>Checkpoint.File</td>
+ * <td>{@link String}</td>
+ * <td>If set, checkpoints of the current solution are periodically written into
+ * this file and the solver resumes from the checkpoint when it exists (see
+ * {@link SolutionCheckpoint})</td>
+ * </tr>
  * </table>
  * 
  * @see SolverListener
@@ -229,6 +248,12 @@ public class Solver<V extends Variable<V, T>, T extends Value<V, T>> {
     private boolean iUpdateProgress = true;
 
     protected Progress iProgress;
+    
+    private SolverMetrics iMetrics = null;
+    
+    private SolutionCheckpoint<V, T> iCheckpoint = null;
+    
+    private ExecutorService iEvaluationPool = null;
 
     /**
      * Constructor.
@@ -242,6 +267,15 @@ public class Solver<V extends Variable<V, T>, T extends Value<V, T>> {
 
     /** Dispose solver */
     public void dispose() {
+        if (iMetrics != null) {
+            iMetrics.dispose();
+            iMetrics = null;
+        }
+        if (iCheckpoint != null) {
+            iCheckpoint.stop();
+            iCheckpoint = null;
+        }
+        shutdownEvaluationPool();
         iExtensions.clear();
         iSolverListeners.clear();
         iTerminationCondition = null;
@@ -447,6 +481,47 @@ public class Solver<V extends Variable<V, T>, T extends Value<V, T>> {
         iSolverThread.start();
     }
 
+    /** Solution checkpoint
+     * @return solution checkpoint, null when checkpoints are not enabled (see {@link SolutionCheckpoint#isEnabled(DataProperties)})
+     **/
+    public SolutionCheckpoint<V, T> getCheckpoint() {
+        return iCheckpoint;
+    }
+
+    /**
+     * Threads that can be used to compute values of moves in parallel (see the BatchSize parameter of
+     * {@link org.cpsolver.ifs.algorithms.NeighbourSearch}). The pool is created on the first call and
+     * it is shut down when the solver finishes (or when it is disposed). Idle threads are released after a minute.
+     * @param nrThreads number of threads of the pool (only used when the pool is created)
+     * @return thread pool, null if there are no threads to be used
+     */
+    public synchronized ExecutorService getEvaluationPool(int nrThreads) {
+        if (iEvaluationPool == null && nrThreads > 0) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(nrThreads, nrThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private AtomicInteger iCount = new AtomicInteger(0);
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Evaluation-" + iCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+            iEvaluationPool = pool;
+        }
+        return iEvaluationPool;
+    }
+    
+    /**
+     * Shut down the threads of {@link Solver#getEvaluationPool(int)}, called when the solver finishes
+     */
+    protected synchronized void shutdownEvaluationPool() {
+        if (iEvaluationPool != null) {
+            iEvaluationPool.shutdown();
+            iEvaluationPool = null;
+        }
+    }
+
     /** Returns solver's thread 
      * @return solver's thread
      **/
@@ -502,9 +577,21 @@ public class Solver<V extends Variable<V, T>, T extends Value<V, T>> {
             extension.register(iCurrentSolution.getModel());
         }
 
+        // solver telemetry
+        if (iMetrics == null && SolverMetrics.isEnabled(iProperties))
+            iMetrics = new SolverMetrics(iProperties);
+
         // register solution
         iCurrentSolution.init(Solver.this);
 
+        // resume from a checkpoint (only when the solver is started for the first time), write checkpoints
+        if (iCheckpoint == null && SolutionCheckpoint.isEnabled(iProperties)) {
+            iCheckpoint = new SolutionCheckpoint<V, T>(iProperties);
+            iCheckpoint.resume(iCurrentSolution);
+        }
+        if (iCheckpoint != null)
+            iCheckpoint.start(iCurrentSolution);
+
         // register and intialize neighbour selection
         getNeighbourSelection().init(Solver.this);
 
@@ -611,7 +698,7 @@ public class Solver<V extends Variable<V, T>, T extends Value<V, T>> {
                 initSolver();
                 onStart();
 
-                double startTime = JProf.currentTimeSec();
+                double startTime = JProf.currentTimeSec() - iCurrentSolution.getTime();
                 int timeout = getProperties().getPropertyInt("Termination.TimeOut", 1800);
                 if (isUpdateProgress()) {
                     if (iCurrentSolution.getBestInfo() == null) {
@@ -687,6 +774,9 @@ public class Solver<V extends Variable<V, T>, T extends Value<V, T>> {
 
                 // Finalization
                 iLastSolution = iCurrentSolution;
+                if (iCheckpoint != null)
+                    iCheckpoint.stop();
+                shutdownEvaluationPool();
 
                 iProgress.setPhase("Done", 1);
                 iProgress.incProgress();
@@ -711,6 +801,13 @@ public class Solver<V extends Variable<V, T>, T extends Value<V, T>> {
         }
     }
     
+    /** Solver telemetry (see {@link SolverMetrics}), null when it is not enabled (parameter Metrics.Enabled)
+     * @return solver metrics
+     **/
+    public SolverMetrics getMetrics() {
+        return iMetrics;
+    }
+    
     /** Return true if {@link Solver#stopSolver()} was called 
      * @return true if the solver is to be stopped
      **/
@@ -0,0 +1,578 @@
+package org.cpsolver.ifs.solver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.cpsolver.ifs.util.DataProperties;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Solver telemetry. <br>
+ * <br>
+ * When enabled (parameter Metrics.Enabled), the solver keeps continuous counters
+ * for each neighbour selection of a {@link org.cpsolver.ifs.algorithms.NeighbourSearch}
+ * and each solver thread: the number of attempts, null moves, accepted moves,
+ * improving moves, and side moves, and a histogram of the time spent in
+ * the neighbour selection (in nanoseconds). The {@link ParallelSolver} also keeps a
+ * histogram of the time its threads have been waiting for the solution lock.
+ * All the counters are atomic and they are updated without any allocation. <br>
+ * <br>
+ * The metrics are exposed as JMX MBeans (domain org.cpsolver, parameter
+ * Metrics.JMX) and, optionally, in the Prometheus text format on a local HTTP
+ * endpoint /metrics (parameter Metrics.HttpPort). The MBeans are unregistered and
+ * the HTTP endpoint is stopped when the solver is disposed (see {@link Solver#dispose()}).
+ * <br>
+ * <br>
+ * Parameters: <br>
+ * <table border='1' summary='Related Solver Parameters'>
+ * <tr>
+ * <th>Parameter</th>
+ * <th>Type</th>
+ * <th>Comment</th>
+ * </tr>
+ * <tr>
+ * <td>Metrics.Enabled</td>
+ * <td>{@link Boolean}</td>
+ * <td>Collect solver metrics (defaults to false)</td>
+ * </tr>
+ * <tr>
+ * <td>Metrics.JMX</td>
+ * <td>{@link Boolean}</td>
+ * <td>Register the metrics as MBeans in the platform MBean server (defaults to true)</td>
+ * </tr>
+ * <tr>
+ * <td>Metrics.HttpPort</td>
+ * <td>{@link Integer}</td>
+ * <td>When set, the metrics are also available in the Prometheus text format at http://localhost:port/metrics</td>
+ * </tr>
+ * <tr>
+ * <td>Metrics.Name</td>
+ * <td>{@link String}</td>
+ * <td>Name of the solver instance (solver key of the MBeans, solver label of the metrics), defaults to solverN</td>
+ * </tr>
+ * </table>
+ *
+ * @version IFS 1.3 (Iterative Forward Search)<br>
+ *          Copyright (C) 2014 Tomas Muller<br>
+ *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
+ *          <a href="http://muller.unitime.org">http://muller.unitime.org</a><br>
+ * <br>
+ *          This library is free software; you can redistribute it and/or modify
+ *          it under the terms of the GNU Lesser General Public License as
+ *          published by the Free Software Foundation; either version 3 of the
+ *          License, or (at your option) any later version. <br>
+ * <br>
+ *          This library is distributed in the hope that it will be useful, but
+ *          WITHOUT ANY WARRANTY; without even the implied warranty of
+ *          MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *          Lesser General Public License for more details. <br>
+ * <br>
+ *          You should have received a copy of the GNU Lesser General Public
+ *          License along with this library; if not see
+ *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
+ */
+public class SolverMetrics {
+    private static org.apache.log4j.Logger sLogger = org.apache.log4j.Logger.getLogger(SolverMetrics.class);
+    public static final String PARAM_ENABLED = "Metrics.Enabled";
+    public static final String PARAM_JMX = "Metrics.JMX";
+    public static final String PARAM_HTTP_PORT = "Metrics.HttpPort";
+    public static final String PARAM_NAME = "Metrics.Name";
+    private static final String sDomain = "org.cpsolver";
+    private static AtomicInteger sSolverCounter = new AtomicInteger(0);
+
+    private String iName;
+    private boolean iJmx;
+    private List<Metric> iMetrics = new ArrayList<Metric>();
+    private List<ObjectName> iRegistered = new ArrayList<ObjectName>();
+    private LockMetrics iLockWait;
+    private HttpServer iServer = null;
+
+    /**
+     * Constructor
+     * @param properties solver configuration
+     */
+    public SolverMetrics(DataProperties properties) {
+        iName = properties.getProperty(PARAM_NAME, "solver" + sSolverCounter.incrementAndGet());
+        iJmx = properties.getPropertyBoolean(PARAM_JMX, true);
+        iLockWait = new LockMetrics(iName);
+        register(iLockWait);
+        int port = properties.getPropertyInt(PARAM_HTTP_PORT, -1);
+        if (port >= 0) {
+            try {
+                iServer = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+                iServer.createContext("/metrics", new HttpHandler() {
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        byte[] response = toPrometheus().getBytes("UTF-8");
+                        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                        exchange.sendResponseHeaders(200, response.length);
+                        OutputStream out = exchange.getResponseBody();
+                        try {
+                            out.write(response);
+                        } finally {
+                            out.close();
+                        }
+                    }
+                });
+                iServer.start();
+            } catch (IOException e) {
+                sLogger.error("Unable to start metrics endpoint on port " + port + ": " + e.getMessage(), e);
+                iServer = null;
+            }
+        }
+    }
+
+    /**
+     * Check whether the metrics are enabled
+     * @param properties solver configuration
+     * @return true if parameter Metrics.Enabled is set to true
+     */
+    public static boolean isEnabled(DataProperties properties) {
+        return properties.getPropertyBoolean(PARAM_ENABLED, false);
+    }
+
+    /** Solver instance name
+     * @return name of the solver (solver label of the metrics)
+     **/
+    public String getName() {
+        return iName;
+    }
+
+    /**
+     * Create a new set of counters for a neighbour selection and a solver thread
+     * @param search neighbour search (e.g., HillClimber)
+     * @param selection neighbour selection (e.g., RandomMove)
+     * @param thread solver thread index
+     * @return newly registered counters
+     */
+    public NeighbourMetrics createNeighbourMetrics(String search, String selection, int thread) {
+        NeighbourMetrics metrics = new NeighbourMetrics(iName, search, selection, thread);
+        register(metrics);
+        return metrics;
+    }
+
+    /** Time spent by the solver threads waiting for the solution lock
+     * @return lock metrics
+     **/
+    public LockMetrics getLockWait() {
+        return iLockWait;
+    }
+
+    private synchronized void register(Metric metric) {
+        iMetrics.add(metric);
+        if (iJmx) {
+            try {
+                ObjectName name = metric.getObjectName();
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(name))
+                    server.unregisterMBean(name);
+                server.registerMBean(new MetricBean(metric), name);
+                iRegistered.add(name);
+            } catch (Exception e) {
+                sLogger.warn("Unable to register " + metric.getDescription() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Unregister all MBeans and stop the HTTP endpoint */
+    public synchronized void dispose() {
+        if (iServer != null) {
+            iServer.stop(0);
+            iServer = null;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : iRegistered) {
+            try {
+                if (server.isRegistered(name))
+                    server.unregisterMBean(name);
+            } catch (Exception e) {
+                sLogger.warn("Unable to unregister " + name + ": " + e.getMessage());
+            }
+        }
+        iRegistered.clear();
+    }
+
+    /** All metrics in the Prometheus text format
+     * @return metrics export
+     **/
+    public synchronized String toPrometheus() {
+        StringBuffer sb = new StringBuffer();
+        String last = null;
+        for (Metric metric : iMetrics) {
+            if (!metric.getType().equals(last)) {
+                metric.printHelp(sb);
+                last = metric.getType();
+            }
+            metric.printPrometheus(sb);
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String value) {
+        return ObjectName.quote(value == null ? "" : value);
+    }
+
+    /**
+     * Lock-free histogram with power of two buckets: the bucket i counts the values
+     * between 2<sup>i-1</sup> (inclusive) and 2<sup>i</sup> (exclusive), the bucket 0 counts
+     * zero (and negative) values.
+     */
+    public static class Histogram {
+        private AtomicLongArray iBuckets = new AtomicLongArray(64);
+        private AtomicLong iCount = new AtomicLong(0);
+        private AtomicLong iSum = new AtomicLong(0);
+        private AtomicLong iMax = new AtomicLong(0);
+
+        /**
+         * Record a value
+         * @param value value to record (e.g., time in nanoseconds)
+         */
+        public void record(long value) {
+            iBuckets.incrementAndGet(value <= 0 ? 0 : Math.min(63, 64 - Long.numberOfLeadingZeros(value)));
+            iCount.incrementAndGet();
+            iSum.addAndGet(value);
+            long max = iMax.get();
+            while (value > max && !iMax.compareAndSet(max, value))
+                max = iMax.get();
+        }
+
+        /** Number of recorded values
+         * @return count
+         **/
+        public long getCount() { return iCount.get(); }
+
+        /** Sum of recorded values
+         * @return sum
+         **/
+        public long getSum() { return iSum.get(); }
+
+        /** Largest recorded value
+         * @return maximum
+         **/
+        public long getMax() { return iMax.get(); }
+
+        /** Average recorded value
+         * @return sum / count
+         **/
+        public double getMean() {
+            long count = iCount.get();
+            return (count == 0 ? 0.0 : ((double) iSum.get()) / count);
+        }
+
+        /**
+         * Approximate percentile (upper bound of the bucket containing the percentile)
+         * @param p percentile between 0.0 and 1.0
+         * @return approximate value
+         */
+        public long getPercentile(double p) {
+            long count = iCount.get();
+            if (count == 0) return 0;
+            long limit = (long) Math.ceil(p * count), total = 0;
+            for (int i = 0; i < iBuckets.length(); i++) {
+                total += iBuckets.get(i);
+                if (total >= limit) return (i == 0 ? 0 : (1l << i) - 1);
+            }
+            return iMax.get();
+        }
+
+        /**
+         * Prometheus histogram lines
+         * @param sb output
+         * @param name metric name
+         * @param labels metric labels
+         * @param scale value multiplier (e.g., 1e-9 for nanoseconds to seconds)
+         */
+        protected void printPrometheus(StringBuffer sb, String name, String labels, double scale) {
+            int last = 0;
+            for (int i = 0; i < iBuckets.length(); i++)
+                if (iBuckets.get(i) > 0) last = i;
+            long total = 0;
+            for (int i = 0; i <= last; i++) {
+                total += iBuckets.get(i);
+                sb.append(name + "_bucket{" + labels + ",le=\"" + (i == 0 ? 0.0 : scale * ((1l << i) - 1)) + "\"} " + total + "\n");
+            }
+            sb.append(name + "_bucket{" + labels + ",le=\"+Inf\"} " + iCount.get() + "\n");
+            sb.append(name + "_sum{" + labels + "} " + (scale * iSum.get()) + "\n");
+            sb.append(name + "_count{" + labels + "} " + iCount.get() + "\n");
+        }
+    }
+
+    /**
+     * A set of metrics that is registered as one MBean
+     */
+    public static abstract class Metric {
+        /** MBean name
+         * @return object name of the MBean
+         * @throws Exception when the name is not valid
+         **/
+        protected abstract ObjectName getObjectName() throws Exception;
+
+        /** Metric type (metrics of the same type are printed together)
+         * @return metric type
+         **/
+        protected abstract String getType();
+
+        /** Description
+         * @return description of the metric
+         **/
+        protected abstract String getDescription();
+
+        /** Attribute names
+         * @return names of the MBean attributes
+         **/
+        protected abstract String[] getAttributeNames();
+
+        /** Attribute value
+         * @param name attribute name
+         * @return attribute value, null if there is no such attribute
+         **/
+        protected abstract Object getAttribute(String name);
+
+        /** Prometheus HELP and TYPE lines
+         * @param sb output
+         **/
+        protected abstract void printHelp(StringBuffer sb);
+
+        /** Prometheus metric lines
+         * @param sb output
+         **/
+        protected abstract void printPrometheus(StringBuffer sb);
+    }
+
+    /**
+     * Counters of a neighbour selection of one solver thread
+     */
+    public static class NeighbourMetrics extends Metric {
+        private static final String[] sAttributes = new String[] {
+            "Attempts", "NullMoves", "Accepted", "Improving", "SideMoves", "TimeNanos", "MeanTimeNanos", "MaxTimeNanos", "P50TimeNanos", "P99TimeNanos"
+        };
+        private String iSolver, iSearch, iSelection;
+        private int iThread;
+        private AtomicLong iAttempts = new AtomicLong(0);
+        private AtomicLong iNullMoves = new AtomicLong(0);
+        private AtomicLong iAccepted = new AtomicLong(0);
+        private AtomicLong iImproving = new AtomicLong(0);
+        private AtomicLong iSideMoves = new AtomicLong(0);
+        private Histogram iTime = new Histogram();
+
+        private NeighbourMetrics(String solver, String search, String selection, int thread) {
+            iSolver = solver;
+            iSearch = search;
+            iSelection = selection;
+            iThread = thread;
+        }
+
+        /**
+         * A neighbour has been generated
+         * @param nullMove true if the neighbour selection returned null
+         * @param nanos time spent in the neighbour selection in nanoseconds
+         */
+        public void selected(boolean nullMove, long nanos) {
+            iAttempts.incrementAndGet();
+            if (nullMove) iNullMoves.incrementAndGet();
+            iTime.record(nanos);
+        }
+
+        /**
+         * A generated neighbour has been accepted
+         * @param value value of the neighbour (negative for an improving move, zero for a side move)
+         */
+        public void accepted(double value) {
+            iAccepted.incrementAndGet();
+            if (value < 0)
+                iImproving.incrementAndGet();
+            else if (value == 0)
+                iSideMoves.incrementAndGet();
+        }
+
+        public long getAttempts() { return iAttempts.get(); }
+        public long getNullMoves() { return iNullMoves.get(); }
+        public long getAccepted() { return iAccepted.get(); }
+        public long getImproving() { return iImproving.get(); }
+        public long getSideMoves() { return iSideMoves.get(); }
+        public Histogram getTime() { return iTime; }
+
+        @Override
+        protected ObjectName getObjectName() throws Exception {
+            return new ObjectName(sDomain + ":type=NeighbourSelection,solver=" + quote(iSolver) + ",search=" + quote(iSearch) + ",selection=" + quote(iSelection) + ",thread=" + iThread);
+        }
+
+        @Override
+        protected String getType() { return "neighbour"; }
+
+        @Override
+        protected String getDescription() { return iSearch + "." + iSelection + "[" + iThread + "]"; }
+
+        @Override
+        protected String[] getAttributeNames() { return sAttributes; }
+
+        @Override
+        protected Object getAttribute(String name) {
+            if ("Attempts".equals(name)) return getAttempts();
+            if ("NullMoves".equals(name)) return getNullMoves();
+            if ("Accepted".equals(name)) return getAccepted();
+            if ("Improving".equals(name)) return getImproving();
+            if ("SideMoves".equals(name)) return getSideMoves();
+            if ("TimeNanos".equals(name)) return iTime.getSum();
+            if ("MeanTimeNanos".equals(name)) return iTime.getMean();
+            if ("MaxTimeNanos".equals(name)) return iTime.getMax();
+            if ("P50TimeNanos".equals(name)) return iTime.getPercentile(0.5);
+            if ("P99TimeNanos".equals(name)) return iTime.getPercentile(0.99);
+            return null;
+        }
+
+        @Override
+        protected void printHelp(StringBuffer sb) {
+            sb.append("# HELP cpsolver_neighbour_moves_total Neighbour selection calls by outcome\n");
+            sb.append("# TYPE cpsolver_neighbour_moves_total counter\n");
+            sb.append("# HELP cpsolver_neighbour_time_seconds Time spent in the neighbour selection\n");
+            sb.append("# TYPE cpsolver_neighbour_time_seconds histogram\n");
+        }
+
+        @Override
+        protected void printPrometheus(StringBuffer sb) {
+            String labels = "solver=\"" + iSolver + "\",search=\"" + iSearch + "\",selection=\"" + iSelection + "\",thread=\"" + iThread + "\"";
+            sb.append("cpsolver_neighbour_moves_total{" + labels + ",outcome=\"attempt\"} " + getAttempts() + "\n");
+            sb.append("cpsolver_neighbour_moves_total{" + labels + ",outcome=\"null\"} " + getNullMoves() + "\n");
+            sb.append("cpsolver_neighbour_moves_total{" + labels + ",outcome=\"accepted\"} " + getAccepted() + "\n");
+            sb.append("cpsolver_neighbour_moves_total{" + labels + ",outcome=\"improving\"} " + getImproving() + "\n");
+            sb.append("cpsolver_neighbour_moves_total{" + labels + ",outcome=\"side\"} " + getSideMoves() + "\n");
+            iTime.printPrometheus(sb, "cpsolver_neighbour_time_seconds", labels, 1e-9);
+        }
+    }
+
+    /**
+     * Solution lock waiting time
+     */
+    public static class LockMetrics extends Metric {
+        private static final String[] sAttributes = new String[] {
+            "Count", "WaitNanos", "MeanWaitNanos", "MaxWaitNanos", "P50WaitNanos", "P99WaitNanos"
+        };
+        private String iSolver;
+        private Histogram iWait = new Histogram();
+
+        private LockMetrics(String solver) {
+            iSolver = solver;
+        }
+
+        /**
+         * Record the time a thread had to wait for the lock
+         * @param nanos waiting time in nanoseconds
+         */
+        public void waited(long nanos) {
+            iWait.record(nanos);
+        }
+
+        public Histogram getWait() { return iWait; }
+
+        @Override
+        protected ObjectName getObjectName() throws Exception {
+            return new ObjectName(sDomain + ":type=SolutionLock,solver=" + quote(iSolver));
+        }
+
+        @Override
+        protected String getType() { return "lock"; }
+
+        @Override
+        protected String getDescription() { return "solution lock"; }
+
+        @Override
+        protected String[] getAttributeNames() { return sAttributes; }
+
+        @Override
+        protected Object getAttribute(String name) {
+            if ("Count".equals(name)) return iWait.getCount();
+            if ("WaitNanos".equals(name)) return iWait.getSum();
+            if ("MeanWaitNanos".equals(name)) return iWait.getMean();
+            if ("MaxWaitNanos".equals(name)) return iWait.getMax();
+            if ("P50WaitNanos".equals(name)) return iWait.getPercentile(0.5);
+            if ("P99WaitNanos".equals(name)) return iWait.getPercentile(0.99);
+            return null;
+        }
+
+        @Override
+        protected void printHelp(StringBuffer sb) {
+            sb.append("# HELP cpsolver_lock_wait_seconds Time spent waiting for the solution lock\n");
+            sb.append("# TYPE cpsolver_lock_wait_seconds histogram\n");
+        }
+
+        @Override
+        protected void printPrometheus(StringBuffer sb) {
+            iWait.printPrometheus(sb, "cpsolver_lock_wait_seconds", "solver=\"" + iSolver + "\"", 1e-9);
+        }
+    }
+
+    /**
+     * Read-only dynamic MBean exposing the attributes of a metric
+     */
+    private static class MetricBean implements DynamicMBean {
+        private Metric iMetric;
+
+        private MetricBean(Metric metric) {
+            iMetric = metric;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = iMetric.getAttribute(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Object value = iMetric.getAttribute(attribute);
+                if (value != null)
+                    list.add(new Attribute(attribute, value));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            String[] names = iMetric.getAttributeNames();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Object value = iMetric.getAttribute(names[i]);
+                attributes[i] = new MBeanAttributeInfo(names[i], value instanceof Double ? "double" : "long", names[i], true, false, false);
+            }
+            return new MBeanInfo(iMetric.getClass().getName(), iMetric.getDescription(), attributes, null, null, null);
+        }
+    }
+}
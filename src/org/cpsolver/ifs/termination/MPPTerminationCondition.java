@@ -103,7 +103,7 @@ public class MPPTerminationCondition<V extends Variable<V, T>, T extends Value<V
     @Override
     public boolean canContinue(Solution<V, T> currentSolution) {
         if (iMinPerturbances >= 0 && currentSolution.getAssignment().nrUnassignedVariables(currentSolution.getModel()) == 0
-                && currentSolution.getModel().perturbVariables(currentSolution.getAssignment()).size() <= iMinPerturbances) {
+                && currentSolution.getModel().countPerturbVariables(currentSolution.getAssignment()) <= iMinPerturbances) {
             sLogger.info("A complete solution with allowed number of perturbances found.");
             return false;
         }
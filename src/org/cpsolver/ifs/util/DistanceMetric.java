@@ -1,7 +1,12 @@
 package org.cpsolver.ifs.util;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -16,6 +21,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * For instructors, the preference is computed using the distance in meters and the three constants 
  * Instructor.NoPreferenceLimit (distance &lt;= limit &rarr; no preference), Instructor.DiscouragedLimit (distance &lt;= limit &rarr; discouraged),
  * Instructor.ProhibitedLimit (distance &lt;= limit &rarr; strongly discouraged), the back-to-back placement is prohibited when the distance is over the last limit.
+ * <br><br>
+ * Distances between locations with a unique id (see {@link DistanceMetric#getDistanceInMeters(Long, Double, Double, Long, Double, Double)})
+ * are kept in a triangular distance matrix indexed by the location. A location is added to the matrix the first time it is used, all the
+ * following look-ups are lock-free.
  * 
  * @version IFS 1.3 (Iterative Forward Search)<br>
  *          Copyright (C) 2006 - 2014 Tomas Muller<br>
@@ -113,8 +122,10 @@ public class DistanceMetric {
     private int iMaxTravelTime = 60;
     /** Travel times overriding the distances computed from coordintaes */
     private Map<Long, Map<Long, Integer>> iTravelTimes = new HashMap<Long, Map<Long,Integer>>();
-    /** Distance cache  */
-    private Map<String, Double> iDistanceCache = new HashMap<String, Double>();
+    /** Distance matrix (distances between locations with an id) */
+    private volatile DistanceMatrix iDistanceMatrix = new DistanceMatrix();
+    /** Small cache of distances between locations that are not in the distance matrix (e.g., locations without an id) */
+    private final AtomicReferenceArray<CoordinateDistance> iCoordinateCache = new AtomicReferenceArray<CoordinateDistance>(1024);
     /** True if distances should be considered between classes that are NOT back-to-back */
     private boolean iComputeDistanceConflictsBetweenNonBTBClasses = false;
     /** Reference of the accommodation of students that need short distances */
@@ -208,80 +219,47 @@ public class DistanceMetric {
             return Math.sqrt(dx * dx + dy * dy);
         }
         
-        String id = null;
-        if (lat1 < lat2 || (lat1 == lat2 && lon1 <= lon2)) {
-            id =
-                Long.toHexString(Double.doubleToRawLongBits(lat1)) +
-                Long.toHexString(Double.doubleToRawLongBits(lon1)) +
-                Long.toHexString(Double.doubleToRawLongBits(lat2)) +
-                Long.toHexString(Double.doubleToRawLongBits(lon2));
-        } else {
-            id =
-                Long.toHexString(Double.doubleToRawLongBits(lat1)) +
-                Long.toHexString(Double.doubleToRawLongBits(lon1)) +
-                Long.toHexString(Double.doubleToRawLongBits(lat2)) +
-                Long.toHexString(Double.doubleToRawLongBits(lon2));
-        }
+        double a = iModel.a(), b = iModel.b(),  f = iModel.f();  // ellipsoid params
+        double L = deg2rad(lon2-lon1);
+        double U1 = Math.atan((1-f) * Math.tan(deg2rad(lat1)));
+        double U2 = Math.atan((1-f) * Math.tan(deg2rad(lat2)));
+        double sinU1 = Math.sin(U1), cosU1 = Math.cos(U1);
+        double sinU2 = Math.sin(U2), cosU2 = Math.cos(U2);
         
-        iLock.readLock().lock();
-        try {
-            Double distance = iDistanceCache.get(id);
-            if (distance != null) return distance;
-        } finally {
-            iLock.readLock().unlock();
-        }
+        double lambda = L, lambdaP, iterLimit = 100;
+        double cosSqAlpha, cos2SigmaM, sinSigma, cosSigma, sigma, sinLambda, cosLambda;
+        do {
+          sinLambda = Math.sin(lambda);
+          cosLambda = Math.cos(lambda);
+          sinSigma = Math.sqrt((cosU2*sinLambda) * (cosU2*sinLambda) + 
+            (cosU1*sinU2-sinU1*cosU2*cosLambda) * (cosU1*sinU2-sinU1*cosU2*cosLambda));
+          if (sinSigma==0) return 0;  // co-incident points
+          cosSigma = sinU1*sinU2 + cosU1*cosU2*cosLambda;
+          sigma = Math.atan2(sinSigma, cosSigma);
+          double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+          cosSqAlpha = 1 - sinAlpha*sinAlpha;
+          cos2SigmaM = cosSigma - 2*sinU1*sinU2/cosSqAlpha;
+          if (Double.isNaN(cos2SigmaM)) cos2SigmaM = 0;  // equatorial line: cosSqAlpha=0 (�6)
+          double C = f/16*cosSqAlpha*(4+f*(4-3*cosSqAlpha));
+          lambdaP = lambda;
+          lambda = L + (1-C) * f * sinAlpha *
+            (sigma + C*sinSigma*(cos2SigmaM+C*cosSigma*(-1+2*cos2SigmaM*cos2SigmaM)));
+        } while (Math.abs(lambda-lambdaP) > 1e-12 && --iterLimit>0);
+        if (iterLimit==0) return Double.NaN; // formula failed to converge
+       
+        double uSq = cosSqAlpha * (a*a - b*b) / (b*b);
+        double A = 1 + uSq/16384*(4096+uSq*(-768+uSq*(320-175*uSq)));
+        double B = uSq/1024 * (256+uSq*(-128+uSq*(74-47*uSq)));
+        double deltaSigma = B*sinSigma*(cos2SigmaM+B/4*(cosSigma*(-1+2*cos2SigmaM*cos2SigmaM)-
+          B/6*cos2SigmaM*(-3+4*sinSigma*sinSigma)*(-3+4*cos2SigmaM*cos2SigmaM)));
         
-        iLock.writeLock().lock();
-        try {
-            Double distance = iDistanceCache.get(id);
-            if (distance != null) return distance;
-
-            double a = iModel.a(), b = iModel.b(),  f = iModel.f();  // ellipsoid params
-            double L = deg2rad(lon2-lon1);
-            double U1 = Math.atan((1-f) * Math.tan(deg2rad(lat1)));
-            double U2 = Math.atan((1-f) * Math.tan(deg2rad(lat2)));
-            double sinU1 = Math.sin(U1), cosU1 = Math.cos(U1);
-            double sinU2 = Math.sin(U2), cosU2 = Math.cos(U2);
-            
-            double lambda = L, lambdaP, iterLimit = 100;
-            double cosSqAlpha, cos2SigmaM, sinSigma, cosSigma, sigma, sinLambda, cosLambda;
-            do {
-              sinLambda = Math.sin(lambda);
-              cosLambda = Math.cos(lambda);
-              sinSigma = Math.sqrt((cosU2*sinLambda) * (cosU2*sinLambda) + 
-                (cosU1*sinU2-sinU1*cosU2*cosLambda) * (cosU1*sinU2-sinU1*cosU2*cosLambda));
-              if (sinSigma==0) return 0;  // co-incident points
-              cosSigma = sinU1*sinU2 + cosU1*cosU2*cosLambda;
-              sigma = Math.atan2(sinSigma, cosSigma);
-              double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
-              cosSqAlpha = 1 - sinAlpha*sinAlpha;
-              cos2SigmaM = cosSigma - 2*sinU1*sinU2/cosSqAlpha;
-              if (Double.isNaN(cos2SigmaM)) cos2SigmaM = 0;  // equatorial line: cosSqAlpha=0 (�6)
-              double C = f/16*cosSqAlpha*(4+f*(4-3*cosSqAlpha));
-              lambdaP = lambda;
-              lambda = L + (1-C) * f * sinAlpha *
-                (sigma + C*sinSigma*(cos2SigmaM+C*cosSigma*(-1+2*cos2SigmaM*cos2SigmaM)));
-            } while (Math.abs(lambda-lambdaP) > 1e-12 && --iterLimit>0);
-            if (iterLimit==0) return Double.NaN; // formula failed to converge
-           
-            double uSq = cosSqAlpha * (a*a - b*b) / (b*b);
-            double A = 1 + uSq/16384*(4096+uSq*(-768+uSq*(320-175*uSq)));
-            double B = uSq/1024 * (256+uSq*(-128+uSq*(74-47*uSq)));
-            double deltaSigma = B*sinSigma*(cos2SigmaM+B/4*(cosSigma*(-1+2*cos2SigmaM*cos2SigmaM)-
-              B/6*cos2SigmaM*(-3+4*sinSigma*sinSigma)*(-3+4*cos2SigmaM*cos2SigmaM)));
-            
-            // initial & final bearings
-            // double fwdAz = Math.atan2(cosU2*sinLambda, cosU1*sinU2-sinU1*cosU2*cosLambda);
-            // double revAz = Math.atan2(cosU1*sinLambda, -sinU1*cosU2+cosU1*sinU2*cosLambda);
-            
-            // s = s.toFixed(3); // round to 1mm precision
+        // initial & final bearings
+        // double fwdAz = Math.atan2(cosU2*sinLambda, cosU1*sinU2-sinU1*cosU2*cosLambda);
+        // double revAz = Math.atan2(cosU1*sinLambda, -sinU1*cosU2+cosU1*sinU2*cosLambda);
+        
+        // s = s.toFixed(3); // round to 1mm precision
 
-            distance = b*A*(sigma-deltaSigma);
-            iDistanceCache.put(id, distance);
-            return distance;
-        } finally {
-            iLock.writeLock().unlock();
-        }
+        return b*A*(sigma-deltaSigma);
     }
     
     /**
@@ -381,6 +359,9 @@ public class DistanceMetric {
         } finally {
             iLock.writeLock().unlock();
         }
+        // travel times are used by the distance matrix, start over when changed
+        if (!iDistanceMatrix.isEmpty())
+            iDistanceMatrix = new DistanceMatrix();
     }
     
     /** Return travel time between two locations. 
@@ -414,13 +395,12 @@ public class DistanceMetric {
      * @return distance in minutes
      **/
     public Integer getDistanceInMinutes(Long roomId1, Double lat1, Double lon1, Long roomId2, Double lat2, Double lon2) {
-        Integer distance = getTravelTimeInMinutes(roomId1, roomId2);
-        if (distance != null) return distance;
-        
-        if (lat1 == null || lat2 == null || lon1 == null || lon2 == null)
+        double distance = iDistanceMatrix.getDistance(roomId1, lat1, lon1, roomId2, lat2, lon2);
+        if (distance == Double.POSITIVE_INFINITY)
             return getMaxTravelDistanceInMinutes();
-        else 
-            return (int) Math.min(getMaxTravelDistanceInMinutes(), Math.round(getDistanceInMeters(lat1, lon1, lat2, lon2) / iSpeed));
+        if (distance < 0.0)
+            return (int) (-1.0 - distance);
+        return (int) Math.min(getMaxTravelDistanceInMinutes(), Math.round(distance / iSpeed));
     }
     
     /** Return travel distance between two locations.  Travel times are used when available, use coordinates otherwise
@@ -433,10 +413,154 @@ public class DistanceMetric {
      * @return distance in meters
      **/
     public double getDistanceInMeters(Long roomId1, Double lat1, Double lon1, Long roomId2, Double lat2, Double lon2) {
-        Integer distance = getTravelTimeInMinutes(roomId1, roomId2);
-        if (distance != null) return minutes2meters(distance);
+        double distance = iDistanceMatrix.getDistance(roomId1, lat1, lon1, roomId2, lat2, lon2);
+        if (distance == Double.POSITIVE_INFINITY)
+            return iNullDistance;
+        if (distance < 0.0)
+            return minutes2meters((int) (-1.0 - distance));
+        return distance;
+    }
+    
+    /**
+     * Distance between two locations, as stored in the distance matrix: travel time t (in minutes) is stored as -1 - t,
+     * {@link Double#POSITIVE_INFINITY} is used when there is no travel time and some of the coordinates are not known, 
+     * distance in meters computed from the coordinates is used otherwise. When cache is true (locations that are not in the
+     * distance matrix), the computed distance is kept in a small direct-mapped cache indexed by the coordinates.
+     */
+    @SuppressWarnings("deprecation")
+    private double computeDistance(Long roomId1, Double lat1, Double lon1, Long roomId2, Double lat2, Double lon2, boolean cache) {
+        Integer travelTime = getTravelTimeInMinutes(roomId1, roomId2);
+        if (travelTime != null) return -1.0 - travelTime;
+        if (lat1 == null || lat2 == null || lon1 == null || lon2 == null) return Double.POSITIVE_INFINITY;
+        if (!cache) return getDistanceInMeters(lat1, lon1, lat2, lon2);
+        if (lat1 > lat2 || (lat1.equals(lat2) && lon1 > lon2)) {
+            Double lat = lat1; lat1 = lat2; lat2 = lat;
+            Double lon = lon1; lon1 = lon2; lon2 = lon;
+        }
+        long hash = 31 * (31 * (31 * Double.doubleToLongBits(lat1) + Double.doubleToLongBits(lon1)) + Double.doubleToLongBits(lat2)) + Double.doubleToLongBits(lon2);
+        int index = (int) ((hash ^ (hash >>> 32) ^ (hash >>> 17)) & (iCoordinateCache.length() - 1));
+        CoordinateDistance cached = iCoordinateCache.get(index);
+        if (cached != null && cached.isSame(lat1, lon1, lat2, lon2)) return cached.iDistance;
+        double distance = getDistanceInMeters(lat1, lon1, lat2, lon2);
+        iCoordinateCache.set(index, new CoordinateDistance(lat1, lon1, lat2, lon2, distance));
+        return distance;
+    }
+    
+    /** Cached distance between two coordinates, see {@link DistanceMetric#iCoordinateCache} */
+    private static class CoordinateDistance {
+        private final double iLat1, iLon1, iLat2, iLon2, iDistance;
+        
+        private CoordinateDistance(double lat1, double lon1, double lat2, double lon2, double distance) {
+            iLat1 = lat1; iLon1 = lon1; iLat2 = lat2; iLon2 = lon2; iDistance = distance;
+        }
+        
+        private boolean isSame(double lat1, double lon1, double lat2, double lon2) {
+            return iLat1 == lat1 && iLon1 == lon1 && iLat2 == lat2 && iLon2 == lon2;
+        }
+    }
+    
+    /**
+     * Triangular matrix of distances between known locations (the row of the i-th location contains distances to locations 0 .. i).
+     * Locations are identified by their ids, a location is added the first time it is used (locked, only the block table of its row
+     * is allocated). A row is split into blocks of {@link DistanceMatrix#BLOCK} distances, a block is allocated when a distance in it
+     * is computed for the first time, so the memory grows with the pairs of locations that are actually used. A distance is computed
+     * the first time it is looked up and stored in the matrix without locking (two threads may compute the same distance, but they
+     * store the same value); all the other look-ups are lock-free.
+     */
+    private class DistanceMatrix {
+        /** Stored values are raw bits of the distance XOR-ed with this mask, so that zero means not yet computed */
+        private static final long MASK = 0x7ff0dead0000beefl;
+        /** Number of distances in a block of a row */
+        private static final int BLOCK = 64;
+        private ConcurrentHashMap<Long, Location> iLocations = new ConcurrentHashMap<Long, Location>();
+        private List<Location> iLocationList = new ArrayList<Location>();
+        private volatile Row[] iRows = new Row[0];
+        
+        /** True if there are no locations in the matrix */
+        private boolean isEmpty() {
+            return iLocations.isEmpty();
+        }
         
-        return getDistanceInMeters(lat1, lon1, lat2, lon2);
+        /** Distance between two locations, see {@link DistanceMetric#computeDistance(Long, Double, Double, Long, Double, Double, boolean)} */
+        private double getDistance(Long roomId1, Double lat1, Double lon1, Long roomId2, Double lat2, Double lon2) {
+            Location l1 = getLocation(roomId1, lat1, lon1);
+            Location l2 = (l1 == null ? null : getLocation(roomId2, lat2, lon2));
+            if (l1 == null || l2 == null)
+                return computeDistance(roomId1, lat1, lon1, roomId2, lat2, lon2, true);
+            if (l1.iIndex < l2.iIndex) {
+                Location l = l1; l1 = l2; l2 = l;
+            }
+            Row row = iRows[l1.iIndex];
+            long value = row.get(l2.iIndex);
+            if (value != 0l)
+                return Double.longBitsToDouble(value ^ MASK);
+            double distance = computeDistance(l2.iId, l2.iLat, l2.iLon, l1.iId, l1.iLat, l1.iLon, false);
+            row.set(l2.iIndex, Double.doubleToRawLongBits(distance) ^ MASK);
+            return distance;
+        }
+        
+        /** Location of the given id, null if the id is null or if the location is known with different coordinates */
+        private Location getLocation(Long id, Double lat, Double lon) {
+            if (id == null) return null;
+            Location location = iLocations.get(id);
+            if (location == null) location = addLocation(id, lat, lon);
+            return (location.sameCoordinates(lat, lon) ? location : null);
+        }
+        
+        /** Add a location to the matrix (distances to the known locations are computed lazily, see {@link DistanceMatrix#getDistance(Long, Double, Double, Long, Double, Double)}) */
+        private synchronized Location addLocation(Long id, Double lat, Double lon) {
+            Location location = iLocations.get(id);
+            if (location != null) return location;
+            location = new Location(iLocationList.size(), id, lat, lon);
+            Row[] rows = new Row[location.iIndex + 1];
+            System.arraycopy(iRows, 0, rows, 0, location.iIndex);
+            rows[location.iIndex] = new Row(location.iIndex + 1);
+            iRows = rows;
+            iLocationList.add(location);
+            iLocations.put(id, location);
+            return location;
+        }
+    }
+    
+    /** Row of the distance matrix, blocks of {@link DistanceMatrix#BLOCK} distances are allocated when needed */
+    private static class Row {
+        private final AtomicReferenceArray<AtomicLongArray> iBlocks;
+        
+        private Row(int size) {
+            iBlocks = new AtomicReferenceArray<AtomicLongArray>((size + DistanceMatrix.BLOCK - 1) / DistanceMatrix.BLOCK);
+        }
+        
+        /** Stored value of the given column, zero if not computed */
+        private long get(int column) {
+            AtomicLongArray block = iBlocks.get(column / DistanceMatrix.BLOCK);
+            return (block == null ? 0l : block.get(column % DistanceMatrix.BLOCK));
+        }
+        
+        /** Store value of the given column, allocating its block if needed */
+        private void set(int column, long value) {
+            int index = column / DistanceMatrix.BLOCK;
+            AtomicLongArray block = iBlocks.get(index);
+            if (block == null) {
+                iBlocks.compareAndSet(index, null, new AtomicLongArray(DistanceMatrix.BLOCK));
+                block = iBlocks.get(index);
+            }
+            block.set(column % DistanceMatrix.BLOCK, value);
+        }
+    }
+    
+    /** Location in the distance matrix */
+    private static class Location {
+        private int iIndex;
+        private Long iId;
+        private Double iLat, iLon;
+        
+        private Location(int index, Long id, Double lat, Double lon) {
+            iIndex = index; iId = id; iLat = lat; iLon = lon;
+        }
+        
+        private boolean sameCoordinates(Double lat, Double lon) {
+            return ToolBox.equals(iLat, lat) && ToolBox.equals(iLon, lon);
+        }
     }
     
     /** Return travel times matrix
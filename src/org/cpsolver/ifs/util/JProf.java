@@ -32,46 +32,47 @@ import org.apache.log4j.Logger;
  *          <a href='http://www.gnu.org/licenses/'>http://www.gnu.org/licenses/</a>.
  */
 public class JProf {
-    private static Mode sMode = Mode.wall;
     private static enum Mode {
         cpu, wall, user
     }
-    private static boolean sInitialized = false;
+    private static final ThreadMXBean sBean;
+    private static volatile Mode sMode;
+    private static final int sCoarseClockSampling;
     
-    /** Enable / disable the thread CPU timing, if needed */
-    private synchronized static void init() {
-        if (sInitialized) return;
-        sMode = Mode.valueOf(System.getProperty("jprof", sMode.name()));
-        if (sMode != Mode.wall) {
+    /* Enable / disable the thread CPU timing, if needed (done only once) */
+    static {
+        Mode mode = Mode.valueOf(System.getProperty("jprof", Mode.wall.name()));
+        ThreadMXBean bean = null;
+        if (mode != Mode.wall) {
             try {
-                ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                bean = ManagementFactory.getThreadMXBean();
                 if (!bean.isCurrentThreadCpuTimeSupported()) {
-                    Logger.getLogger(JProf.class).warn("Measuring " + sMode.name() + " time is not supported, falling back to wall time.");
-                    sMode = Mode.wall;
+                    Logger.getLogger(JProf.class).warn("Measuring " + mode.name() + " time is not supported, falling back to wall time.");
+                    mode = Mode.wall;
                 }
                 if (!bean.isThreadCpuTimeEnabled())
                     bean.setThreadCpuTimeEnabled(true);
             } catch (UnsupportedOperationException e) {
-                Logger.getLogger(JProf.class).error("Unable to measure " + sMode.name() + " time, falling back to wall time: " + e.getMessage());
-                sMode = Mode.wall;
-                sMode = Mode.wall;
+                Logger.getLogger(JProf.class).error("Unable to measure " + mode.name() + " time, falling back to wall time: " + e.getMessage());
+                mode = Mode.wall;
             }
         }
-        Logger.getLogger(JProf.class).info("Using " + sMode.name() + " time.");
-        sInitialized = true;
+        Logger.getLogger(JProf.class).info("Using " + mode.name() + " time.");
+        sBean = bean;
+        sMode = mode;
+        sCoarseClockSampling = Integer.parseInt(System.getProperty("jprof.sampling", mode == Mode.wall ? "1" : "100"));
     }
     
     /** Current CPU time of this thread in seconds
      * @return CPU time in seconds
      **/
     public static double currentTimeSec() {
-        init();
         try {
             switch (sMode) {
                 case cpu :
-                    return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() / 1e9;
+                    return sBean.getCurrentThreadCpuTime() / 1e9;
                 case user :
-                    return ManagementFactory.getThreadMXBean().getCurrentThreadUserTime() / 1e9;
+                    return sBean.getCurrentThreadUserTime() / 1e9;
                 case wall :
                 default:
                     return System.nanoTime() / 1e9;
@@ -87,13 +88,12 @@ public class JProf {
      * @return CPU time in milliseconds
      **/
     public static long currentTimeMillis() {
-        init();
         try {
             switch (sMode) {
                 case cpu :
-                    return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() / 1000000;
+                    return sBean.getCurrentThreadCpuTime() / 1000000;
                 case user :
-                    return ManagementFactory.getThreadMXBean().getCurrentThreadUserTime() / 1000000;
+                    return sBean.getCurrentThreadUserTime() / 1000000;
                 case wall :
                 default:
                     return System.currentTimeMillis();
@@ -104,4 +104,48 @@ public class JProf {
             return System.currentTimeMillis();
         }
     }
+    
+    /**
+     * Coarse clock, to be used for time-out checks within tight loops (e.g., in a branch &amp; bound search).
+     * The time is measured using {@link JProf#currentTimeMillis()} only on every n-th call, the last measured
+     * time is returned otherwise. The sampling defaults to 1 for the wall time and to 100 for the CPU / user time
+     * (system property jprof.sampling). An instance is not thread-safe, each search should use its own clock.
+     */
+    public static class CoarseClock {
+        private int iSampling;
+        private int iCounter = 0;
+        private long iTime = 0;
+        
+        /** Coarse clock with the default sampling */
+        public CoarseClock() {
+            this(sCoarseClockSampling);
+        }
+        
+        /** Coarse clock with the given sampling
+         * @param sampling the time is measured on every sampling-th call
+         **/
+        public CoarseClock(int sampling) {
+            iSampling = Math.max(1, sampling);
+        }
+        
+        /** Current time in milliseconds, measured at most this number of calls ago
+         * @return time in milliseconds (see {@link JProf#currentTimeMillis()})
+         **/
+        public long currentTimeMillis() {
+            if (iCounter <= 0) {
+                iTime = JProf.currentTimeMillis();
+                iCounter = iSampling;
+            }
+            iCounter--;
+            return iTime;
+        }
+        
+        /** Measure the time on the next call, and return it
+         * @return current time in milliseconds (see {@link JProf#currentTimeMillis()})
+         **/
+        public long reset() {
+            iCounter = 0;
+            return currentTimeMillis();
+        }
+    }
 }
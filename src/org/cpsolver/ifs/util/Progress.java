@@ -3,10 +3,14 @@ package org.cpsolver.ifs.util;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.dom4j.Element;
 
@@ -37,6 +41,11 @@ import org.dom4j.Element;
  * </code>
  * </pre>
  * 
+ * The message log is bounded: for each message level, only the last
+ * {@link Progress#sDefaultLogSize} messages are kept (see also
+ * {@link Progress#setLogSize(int, int)}). Messages are appended into per-level
+ * ring buffers without any locking.
+ * 
  * @version IFS 1.3 (Iterative Forward Search)<br>
  *          Copyright (C) 2006 - 2014 Tomas Muller<br>
  *          <a href="mailto:muller@unitime.org">muller@unitime.org</a><br>
@@ -68,6 +77,8 @@ public class Progress {
     public static final int MSGLEVEL_WARN = 5;
     public static final int MSGLEVEL_ERROR = 6;
     public static final int MSGLEVEL_FATAL = 7;
+    /** Default number of messages kept in the log for each message level (trace, debug, progress, info, stage, warn, error, fatal) */
+    public static int[] sDefaultLogSize = new int[] { 1000, 1000, 1000, 10000, 1000, 10000, 10000, 1000 };
 
     private String iStatus = "";
     private String iPhase = "";
@@ -75,12 +86,15 @@ public class Progress {
     private long iProgressCurrent = 0;
     private List<ProgressListener> iListeners = new ArrayList<ProgressListener>(5);
     private List<Object[]> iSave = new ArrayList<Object[]>(5);
-    private List<Message> iLog = new ArrayList<Message>(1000);
+    private MessageBuffer[] iLog = new MessageBuffer[sDefaultLogSize.length];
+    private AtomicLong iSequence = new AtomicLong(0);
     private boolean iDisposed = false;
 
     private static HashMap<Object, Progress> sInstances = new HashMap<Object, Progress>();
 
     private Progress() {
+        for (int level = 0; level < iLog.length; level++)
+            iLog[level] = new MessageBuffer(sDefaultLogSize[level]);
     }
 
     /** Progress default instance 
@@ -288,9 +302,7 @@ public class Progress {
                 sLogger.fatal(message, t);
                 break;
         }
-        synchronized (iLog) {
-            iLog.add(m);
-        }
+        append(m);
         fireMessagePrinted(m);
     }
 
@@ -396,11 +408,45 @@ public class Progress {
         message(MSGLEVEL_FATAL, message, e);
     }
 
-    /** Returns log (list of messages) 
+    /** Returns log (list of messages, ordered by the time they were logged). A new list is returned, containing the messages that are still kept in the log. 
      * @return list of logged messages
      **/
     public List<Message> getLog() {
-        return iLog;
+        List<Message> log = new ArrayList<Message>();
+        for (MessageBuffer buffer : iLog)
+            buffer.collect(log);
+        Collections.sort(log, new Comparator<Message>() {
+            @Override
+            public int compare(Message m1, Message m2) {
+                return (m1.iSequence < m2.iSequence ? -1 : m1.iSequence == m2.iSequence ? 0 : 1);
+            }
+        });
+        return log;
+    }
+
+    /** Add a message into the log of its level */
+    private void append(Message message) {
+        message.iSequence = iSequence.incrementAndGet();
+        iLog[Math.max(0, Math.min(iLog.length - 1, message.getLevel()))].add(message);
+    }
+
+    /**
+     * Set the number of messages of the given level that are kept in the log.
+     * The log of the given level is cleared.
+     * @param level message level
+     * @param size maximal number of messages of the level that are kept (0 means no messages are kept)
+     */
+    public void setLogSize(int level, int size) {
+        iLog[level] = new MessageBuffer(size);
+    }
+
+    /**
+     * Number of messages of the given level that are kept in the log
+     * @param level message level
+     * @return maximal number of messages of the level that are kept
+     */
+    public int getLogSize(int level) {
+        return iLog[level].size();
     }
 
     /**
@@ -411,12 +457,10 @@ public class Progress {
      */
     public String getLog(int level) {
         StringBuffer sb = new StringBuffer();
-        synchronized (iLog) {
-            for (Message m : iLog) {
-                String s = m.toString(level);
-                if (s != null)
-                    sb.append(s + "\n");
-            }
+        for (Message m : getLog()) {
+            String s = m.toString(level);
+            if (s != null)
+                sb.append(s + "\n");
         }
         return sb.toString();
     }
@@ -428,12 +472,10 @@ public class Progress {
      */
     public String getHtmlLog(int level, boolean includeDate) {
         StringBuffer sb = new StringBuffer();
-        synchronized (iLog) {
-            for (Message m : iLog) {
-                String s = m.toHtmlString(level, includeDate);
-                if (s != null)
-                    sb.append(s + "<br>");
-            }
+        for (Message m : getLog()) {
+            String s = m.toHtmlString(level, includeDate);
+            if (s != null)
+                sb.append(s + "<br>");
         }
         return sb.toString();
     }
@@ -448,23 +490,20 @@ public class Progress {
      */
     public String getHtmlLog(int level, boolean includeDate, String fromStage) {
         StringBuffer sb = new StringBuffer();
-        synchronized (iLog) {
-            for (Message m : iLog) {
-                if (m.getLevel() == MSGLEVEL_STAGE && m.getMessage().equals(fromStage))
-                    sb = new StringBuffer();
-                String s = m.toHtmlString(level, includeDate);
-                if (s != null)
-                    sb.append(s + "<br>");
-            }
+        for (Message m : getLog()) {
+            if (m.getLevel() == MSGLEVEL_STAGE && m.getMessage().equals(fromStage))
+                sb = new StringBuffer();
+            String s = m.toHtmlString(level, includeDate);
+            if (s != null)
+                sb.append(s + "<br>");
         }
         return sb.toString();
     }
 
     /** Clear the log */
     public void clear() {
-        synchronized (iLog) {
-            iLog.clear();
-        }
+        for (MessageBuffer buffer : iLog)
+            buffer.clear();
     }
 
     private void fireStatusChanged() {
@@ -510,6 +549,7 @@ public class Progress {
         private String iMessage;
         private Date iDate = null;
         private String[] iStakTrace = null;
+        private transient long iSequence = 0;
 
         private Message(int level, String message, Throwable e) {
             iLevel = level;
@@ -708,10 +748,8 @@ public class Progress {
      **/
     public void save(Element root) {
         Element log = root.addElement("log");
-        synchronized (iLog) {
-            for (Message m : iLog) {
-                m.save(log.addElement("msg"));
-            }
+        for (Message m : getLog()) {
+            m.save(log.addElement("msg"));
         }
     }
 
@@ -720,14 +758,51 @@ public class Progress {
      * @param clear clear the log first
      **/
     public void load(Element root, boolean clear) {
-        synchronized (iLog) {
-            if (clear)
-                iLog.clear();
-            Element log = root.element("log");
-            if (log != null) {
-                for (Iterator<?> i = log.elementIterator("msg"); i.hasNext();)
-                    iLog.add(new Message((Element) i.next()));
+        if (clear)
+            clear();
+        Element log = root.element("log");
+        if (log != null) {
+            for (Iterator<?> i = log.elementIterator("msg"); i.hasNext();)
+                append(new Message((Element) i.next()));
+        }
+    }
+
+    /**
+     * Ring buffer of the last messages of a level. A message is appended without
+     * locking: a slot is reserved by incrementing the message counter, the oldest
+     * message of the buffer is overwritten when the buffer is full.
+     */
+    private static class MessageBuffer {
+        private AtomicReferenceArray<Message> iMessages;
+        private AtomicLong iCount = new AtomicLong(0);
+
+        private MessageBuffer(int size) {
+            iMessages = new AtomicReferenceArray<Message>(Math.max(0, size));
+        }
+
+        private int size() {
+            return iMessages.length();
+        }
+
+        private void add(Message message) {
+            if (iMessages.length() == 0) return;
+            long index = iCount.getAndIncrement();
+            iMessages.set((int) (index % iMessages.length()), message);
+        }
+
+        private void collect(List<Message> messages) {
+            long count = iCount.get();
+            for (long index = Math.max(0, count - iMessages.length()); index < count; index++) {
+                Message message = iMessages.get((int) (index % iMessages.length()));
+                if (message != null)
+                    messages.add(message);
             }
         }
+
+        private void clear() {
+            iCount.set(0);
+            for (int i = 0; i < iMessages.length(); i++)
+                iMessages.set(i, null);
+        }
     }
 }
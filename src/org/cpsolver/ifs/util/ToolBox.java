@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
@@ -48,7 +49,9 @@ import org.apache.log4j.PropertyConfigurator;
  */
 public class ToolBox {
     private static long sSeed = System.currentTimeMillis();
-    private static Random sRandom = new Random(sSeed);
+    private static volatile int sSeedGeneration = 0;
+    private static volatile long sSeedThreadId = -1;
+    private static ThreadLocal<ThreadRandom> sRandom = new ThreadLocal<ThreadRandom>();
 
     /** Returns random number (int) from the set 0 .. limit - 1 
      * @param limit a limit 
@@ -70,8 +73,10 @@ public class ToolBox {
             case 1:
                 return set.iterator().next();
             case 2:
+                if (set instanceof RandomAccess && set instanceof List<?>)
+                    return ((List<E>)set).get(getRandom().nextBoolean() ? 1 : 0);
                 Iterator<E> i = set.iterator();
-                if (sRandom.nextBoolean()) i.next();
+                if (getRandom().nextBoolean()) i.next();
                 return i.next();
             default:
                 int index = random(set.size());
@@ -227,12 +232,29 @@ public class ToolBox {
 
     /**
      * Sets seeds for {@link ToolBox#getRandom()} and {@link ToolBox#random()}
-     * methods.
+     * methods. Each thread has its own random number generator: the calling thread's
+     * generator is seeded with the given seed. A thread that has been given an index
+     * (see {@link ToolBox#setSeed(long, int)}) uses a seed derived from the given seed
+     * and its index, any other thread uses a seed derived from the given seed and its
+     * thread id (which is unique, but it is not stable between two runs).
      * @param seed random seed
      */
     public static void setSeed(long seed) {
         sSeed = seed;
-        sRandom = new Random(sSeed);
+        sSeedThreadId = Thread.currentThread().getId();
+        sSeedGeneration++;
+    }
+
+    /**
+     * Sets seed of the current thread, derived from the given seed and the given index of
+     * the thread (e.g., the index of a solver thread of the {@link org.cpsolver.ifs.solver.ParallelSolver}).
+     * Threads with the same index get the same random stream in every run with the same seed.
+     * The thread keeps its index when the seed is changed by {@link ToolBox#setSeed(long)}.
+     * @param seed random seed
+     * @param index stable index of the current thread
+     */
+    public static void setSeed(long seed, int index) {
+        sRandom.set(new ThreadRandom(seed(seed, index), sSeedGeneration, index));
     }
 
     /** Gets current seed 
@@ -242,18 +264,56 @@ public class ToolBox {
         return sSeed;
     }
 
-    /** Gets random number generator 
+    /** Gets random number generator of the current thread
      * @return random number generator
      **/
     public static Random getRandom() {
-        return sRandom;
+        ThreadRandom random = sRandom.get();
+        int generation = sSeedGeneration;
+        if (random == null || random.iGeneration != generation) {
+            Thread thread = Thread.currentThread();
+            int index = (random == null ? -1 : random.iIndex);
+            long seed = sSeed;
+            if (index >= 0)
+                seed = seed(seed, index);
+            else if (thread.getId() != sSeedThreadId)
+                seed = mix(seed + 0x9E3779B97F4A7C15l * (1 + thread.getId()));
+            random = new ThreadRandom(seed, generation, index);
+            sRandom.set(random);
+        }
+        return random;
+    }
+
+    /** Seed of a thread with the given index */
+    private static long seed(long seed, int index) {
+        return mix(seed + 0xD1B54A32D192ED03l * (1 + index));
+    }
+
+    /** Bit mixing function (finalizer of the SplitMix64 generator), used to derive well distributed per-thread seeds */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9l;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBl;
+        return z ^ (z >>> 31);
     }
 
     /** Generates random double number 
      * @return random number
      **/
     public static double random() {
-        return sRandom.nextDouble();
+        return getRandom().nextDouble();
+    }
+    
+    /** Random number generator of a thread, remembers the {@link ToolBox#setSeed(long)} call it was created for and the index of the thread */
+    private static class ThreadRandom extends Random {
+        private static final long serialVersionUID = 1L;
+        private int iGeneration;
+        private int iIndex;
+        
+        private ThreadRandom(long seed, int generation, int index) {
+            super(seed);
+            iGeneration = generation;
+            iIndex = index;
+        }
     }
 
     /** Configurates log4j loging */
@@ -176,14 +176,6 @@ public class InstructorSchedulingModel extends Model<TeachingRequest.Variable, T
         return info;
     }
 
-    @Override
-    public double getTotalValue(Assignment<TeachingRequest.Variable, TeachingAssignment> assignment) {
-        double ret = 0;
-        for (Criterion<TeachingRequest.Variable, TeachingAssignment> criterion : getCriteria())
-            ret += criterion.getWeightedValue(assignment);
-        return ret;
-    }
-
     @Override
     public double getTotalValue(Assignment<TeachingRequest.Variable, TeachingAssignment> assignment, Collection<TeachingRequest.Variable> variables) {
         double ret = 0;
@@ -12,6 +12,7 @@ import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 import org.cpsolver.coursett.Constants;
+import org.cpsolver.coursett.model.WeekCodeIndex;
 import org.cpsolver.ifs.assignment.Assignment;
 import org.cpsolver.ifs.assignment.InheritedAssignment;
 import org.cpsolver.ifs.assignment.OptimisticInheritedAssignment;
@@ -44,6 +45,7 @@ import org.cpsolver.studentsct.model.Config;
 import org.cpsolver.studentsct.model.Course;
 import org.cpsolver.studentsct.model.CourseRequest;
 import org.cpsolver.studentsct.model.Enrollment;
+import org.cpsolver.studentsct.model.FreeTimeRequest;
 import org.cpsolver.studentsct.model.Offering;
 import org.cpsolver.studentsct.model.Request;
 import org.cpsolver.studentsct.model.RequestGroup;
@@ -89,6 +91,7 @@ public class StudentSectioningModel extends ModelWithContext<Request, Enrollment
     private DistanceConflict iDistanceConflict = null;
     private TimeOverlapsCounter iTimeOverlaps = null;
     private StudentQuality iStudentQuality = null;
+    private WeekCodeIndex iWeekCodeIndex = new WeekCodeIndex();
     private int iNrDummyStudents = 0, iNrDummyRequests = 0;
     private double iTotalDummyWeight = 0.0;
     private double iTotalCRWeight = 0.0, iTotalDummyCRWeight = 0.0;
@@ -253,6 +256,7 @@ public class StudentSectioningModel extends ModelWithContext<Request, Enrollment
     @Override
     public void addVariable(Request request) {
         super.addVariable(request);
+        index(request);
         if (request instanceof CourseRequest && !request.isAlternative())
             iTotalCRWeight += request.getWeight();
         if (request instanceof CourseRequest && request.isCritical() && !request.getStudent().isDummy() && !request.isAlternative())
@@ -645,7 +649,7 @@ public class StudentSectioningModel extends ModelWithContext<Request, Enrollment
      */
     public double getUnassignedRequestWeight(Assignment<Request, Enrollment> assignment) {
         double weight = 0.0;
-        for (Request request : assignment.unassignedVariables(this)) {
+        for (Request request : assignment.unassignedVariablesView(this)) {
             weight += request.getWeight();
         }
         return weight;
@@ -720,7 +724,7 @@ public class StudentSectioningModel extends ModelWithContext<Request, Enrollment
      */
     public double avgUnassignPriority(Assignment<Request, Enrollment> assignment) {
         double totalPriority = 0.0;
-        for (Request request : assignment.unassignedVariables(this)) {
+        for (Request request : assignment.unassignedVariablesView(this)) {
             if (request.isAlternative())
                 continue;
             totalPriority += request.getPriority();
@@ -1528,6 +1532,31 @@ public class StudentSectioningModel extends ModelWithContext<Request, Enrollment
         return new OptimisticInheritedAssignment<Request, Enrollment>(solution, index);
     }
     
+    /** Index of date patterns of the time locations of the problem
+     * @return week code index of this model
+     **/
+    public WeekCodeIndex getWeekCodeIndex() {
+        return iWeekCodeIndex;
+    }
+    
+    /**
+     * Add the time locations of the given request (of the free time or of the sections of the requested courses) into the week code index
+     * @param request a request that is being added into the model
+     */
+    protected void index(Request request) {
+        if (request instanceof FreeTimeRequest) {
+            iWeekCodeIndex.index(((FreeTimeRequest)request).getTime());
+        } else if (request instanceof CourseRequest) {
+            for (Course course: ((CourseRequest)request).getCourses()) {
+                if (course.getOffering() == null) continue;
+                for (Config config: course.getOffering().getConfigs())
+                    for (Subpart subpart: config.getSubparts())
+                        for (Section section: subpart.getSections())
+                            iWeekCodeIndex.index(section.getTime());
+            }
+        }
+    }
+    
     public DistanceMetric getDistanceMetric() {
         return (iStudentQuality != null ? iStudentQuality.getDistanceMetric() : iDistanceConflict != null ? iDistanceConflict.getDistanceMetric() : null);
     }
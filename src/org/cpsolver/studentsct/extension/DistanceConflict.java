@@ -1,9 +1,7 @@
 package org.cpsolver.studentsct.extension;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -107,24 +105,13 @@ public class DistanceConflict extends ExtensionWithContext<Request, Enrollment,
         return iDistanceMetric;
     }
         
-    private Map<Long, Map<Long, Integer>> iDistanceCache = new HashMap<Long, Map<Long,Integer>>();
-    protected synchronized int getDistanceInMinutes(RoomLocation r1, RoomLocation r2) {
+    protected int getDistanceInMinutes(RoomLocation r1, RoomLocation r2) {
         if (r1.getId().compareTo(r2.getId()) > 0) return getDistanceInMinutes(r2, r1);
         if (r1.getId().equals(r2.getId()) || r1.getIgnoreTooFar() || r2.getIgnoreTooFar())
             return 0;
         if (r1.getPosX() == null || r1.getPosY() == null || r2.getPosX() == null || r2.getPosY() == null)
             return iDistanceMetric.getMaxTravelDistanceInMinutes();
-        Map<Long, Integer> other2distance = iDistanceCache.get(r1.getId());
-        if (other2distance == null) {
-            other2distance = new HashMap<Long, Integer>();
-            iDistanceCache.put(r1.getId(), other2distance);
-        }
-        Integer distance = other2distance.get(r2.getId());
-        if (distance == null) {
-            distance = iDistanceMetric.getDistanceInMinutes(r1.getId(), r1.getPosX(), r1.getPosY(), r2.getId(), r2.getPosX(), r2.getPosY());
-            other2distance.put(r2.getId(), distance);    
-        }
-        return distance;
+        return iDistanceMetric.getDistanceInMinutes(r1.getId(), r1.getPosX(), r1.getPosY(), r2.getId(), r2.getPosX(), r2.getPosY());
     }
 
     protected int getDistanceInMinutes(Placement p1, Placement p2) {
@@ -153,10 +153,10 @@ public class EnrollmentSelection implements ValueSelection<Request, Enrollment>
         if (iMPP) {
             if (selectedVariable.getInitialAssignment() != null) {
                 if (solution.getModel().unassignedVariables(assignment).isEmpty()) {
-                    if (solution.getModel().perturbVariables(assignment).size() <= iMPPLimit)
-                        iMPPLimit = solution.getModel().perturbVariables(assignment).size() - 1;
+                    if (solution.getModel().countPerturbVariables(assignment) <= iMPPLimit)
+                        iMPPLimit = solution.getModel().countPerturbVariables(assignment) - 1;
                 }
-                if (iMPPLimit >= 0 && solution.getModel().perturbVariables(assignment).size() > iMPPLimit) {
+                if (iMPPLimit >= 0 && solution.getModel().countPerturbVariables(assignment) > iMPPLimit) {
                     if (isAllowed(assignment, selectedVariable.getInitialAssignment()))
                         return selectedVariable.getInitialAssignment();
                 }
@@ -224,7 +224,7 @@ public class EnrollmentSelection implements ValueSelection<Request, Enrollment>
                         && !selectedVariable.getInitialAssignment().equals(value)) {
                     deltaInitialAssignments++;
                 }
-                if (iMPPLimit >= 0 && (solution.getModel().perturbVariables(assignment).size() + deltaInitialAssignments) > iMPPLimit)
+                if (iMPPLimit >= 0 && (solution.getModel().countPerturbVariables(assignment) + deltaInitialAssignments) > iMPPLimit)
                     continue;
             }
 
@@ -195,6 +195,8 @@ public class BranchBoundSelection implements NeighbourSelection<Request, Enrollm
         protected long iT0;
         /** End time */
         protected long iT1;
+        /** Clock used for the time-out checks */
+        protected JProf.CoarseClock iClock = new JProf.CoarseClock();
         /** Was timeout reached */
         protected boolean iTimeoutReached;
         /** Current assignment */
@@ -226,7 +228,7 @@ public class BranchBoundSelection implements NeighbourSelection<Request, Enrollm
          * @return best found schedule for the student
          */
         public BranchBoundNeighbour select() {
-            iT0 = JProf.currentTimeMillis();
+            iT0 = iClock.reset();
             iTimeoutReached = false;
             iAssignment = new Enrollment[iStudent.getRequests().size()];
             iBestAssignment = null;
@@ -666,7 +668,7 @@ public class BranchBoundSelection implements NeighbourSelection<Request, Enrollm
         public void backTrack(int idx) {
             if (sDebug)
                 sLog.debug("backTrack(" + getNrAssigned() + "/" + getValue() + "," + idx + ")");
-            if (iTimeout > 0 && (JProf.currentTimeMillis() - iT0) > iTimeout) {
+            if (iTimeout > 0 && (iClock.currentTimeMillis() - iT0) > iTimeout) {
                 if (sDebug)
                     sLog.debug("  -- timeout reached");
                 iTimeoutReached = true;
@@ -67,6 +67,8 @@ public class MultiCriteriaBranchAndBoundSelection implements OnlineSectioningSel
     protected long iT0;
     /** End time */
     protected long iT1;
+    /** Clock used for the time-out checks */
+    protected JProf.CoarseClock iClock = new JProf.CoarseClock();
     /** Was timeout reached */
     protected boolean iTimeoutReached;
     /** Current assignment */
@@ -145,7 +147,7 @@ public class MultiCriteriaBranchAndBoundSelection implements OnlineSectioningSel
      * student.
      */
     public BranchBoundNeighbour select() {
-        iT0 = JProf.currentTimeMillis();
+        iT0 = iClock.reset();
         iTimeoutReached = false;
         iCurrentAssignment = new Enrollment[iStudent.getRequests().size()];
         iBestAssignment = null;
@@ -298,7 +300,7 @@ public class MultiCriteriaBranchAndBoundSelection implements OnlineSectioningSel
 
     /** branch & bound search */
     public void backTrack(int idx) {
-        if (iTimeout > 0 && (JProf.currentTimeMillis() - iT0) > iTimeout) {
+        if (iTimeout > 0 && (iClock.currentTimeMillis() - iT0) > iTimeout) {
             iTimeoutReached = true;
             return;
         }